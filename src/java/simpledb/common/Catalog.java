@@ -6,6 +6,7 @@ import simpledb.storage.HeapFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -153,6 +154,16 @@ public class Catalog {
     /** Delete all tables from the catalog */
     public void clear() {
         // done
+        // 关闭table持有的文件句柄
+        for(DbFile file : dbFiles.values()) {
+            if(file instanceof Closeable) {
+                try {
+                    ((Closeable) file).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
         dbFiles.clear();
         names.clear();
         pkeyFields.clear();
@@ -0,0 +1,22 @@
+package simpledb.common;
+
+/**
+ * How the LockManager deals with deadlocks.
+ * DETECTION aborts the youngest transaction of a waits-for cycle found by a
+ * background detector. WAIT_DIE and WOUND_WAIT prevent cycles from forming by
+ * comparing transaction timestamps
+ * ({@link simpledb.transaction.TransactionId#isOlderThan}) when a lock request
+ * conflicts:
+ * <ul>
+ * <li>WAIT_DIE: an older requester waits, a younger requester aborts itself.</li>
+ * <li>WOUND_WAIT: an older requester aborts the younger blockers and waits,
+ * a younger requester waits.</li>
+ * </ul>
+ * A transaction that is retried after an abort must run with
+ * {@code new TransactionId(abortedId)}, which keeps its timestamp. With a
+ * fresh TransactionId the retry is the youngest transaction again and can be
+ * aborted over and over.
+ */
+public enum DeadlockPolicy {
+    DETECTION, WAIT_DIE, WOUND_WAIT
+}
@@ -0,0 +1,112 @@
+package simpledb.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的耗时直方图，第i个桶统计耗时在[2^i, 2^(i+1)) ns之间的次数
+ * 记录时只做几次原子加，可以放在热路径上
+ */
+public class LatencyHistogram {
+
+    // 2^63 ns足够覆盖所有耗时
+    private static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+    private final AtomicLong maxNanos;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(NUM_BUCKETS);
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // 其他线程同时更新了最大值，重试
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     *
+     * @return 当前统计数据的拷贝，之后的record不会影响它
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            copy.buckets.set(i, buckets.get(i));
+        }
+        copy.count.set(count.get());
+        copy.totalNanos.set(totalNanos.get());
+        copy.maxNanos.set(maxNanos.get());
+        return copy;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalNanos.get() / n;
+    }
+
+    /**
+     * @param p 百分位，取值[0, 1]
+     * @return 第p百分位所在桶的上界(ns)，精度为2倍
+     */
+    public long getPercentileNanos(double p) {
+        long n = count.get();
+        if(n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if(seen >= rank && seen > 0) {
+                return Math.min((1L << (i + 1)) - 1, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     *
+     * @return 各个桶的计数，下标i对应[2^i, 2^(i+1)) ns
+     */
+    public long[] getBuckets() {
+        long[] result = new long[NUM_BUCKETS];
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            result[i] = buckets.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", getCount(),
+                getMeanNanos() / 1e3, getPercentileNanos(0.5) / 1e3, getPercentileNanos(0.99) / 1e3,
+                getMaxNanos() / 1e3);
+    }
+}
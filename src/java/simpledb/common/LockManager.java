@@ -1,147 +1,394 @@
 package simpledb.common;
 
 import simpledb.storage.PageId;
+import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class LockManager {
 
-    // Key： Page资源， List: 存放了事务id和锁类型， 代表在page上加的锁
-    private Map<PageId, List<LockState>> lockStateMap;
+    // 锁表按PageId的hash分成NUM_STRIPES个分片，每个分片有自己的互斥锁
+    // 不同page上的加锁、解锁只要落在不同分片上就不会互相阻塞
+    private static final int NUM_STRIPES = 64; // 必须是2的幂
+
+    private final Stripe[] stripes;
+
+    // 锁表的反向索引，Key: 事务， Value: 该事务持有锁的所有page
+    // 提交、回滚时只需遍历事务自己持有的锁，不用扫描整个锁表
+    private Map<TransactionId, Set<PageId>> lockedPagesMap;
 
     //Key: 事务， PageId，正在等待的资源，
-    //BufferPool中采用sleep体现等待
+    //等待的事务阻塞在对应page的条件变量上
     private Map<TransactionId, PageId> waitingInfo;
 
+    // waits-for图，Key: 正在等待的事务， Value: 阻塞了它的事务
+    // 在等待者所在page的分片latch下增量维护：入队、授予锁、解锁时重新计算该page上所有等待者的边
+    private Map<TransactionId, List<TransactionId>> waitsForGraph;
+
+    // 被死锁检测线程选为牺牲者，或者在WOUND_WAIT下被更老的事务wound的事务
+    // 它们在等待中被唤醒或下一次申请锁时抛出TransactionAbortedException，事务结束时清除
+    private Set<TransactionId> victims;
+
+    // 处理死锁的策略，见DeadlockPolicy
+    private final DeadlockPolicy policy;
+
+    // 后台死锁检测的周期(ms)
+    private static final long DETECTION_INTERVAL = 50;
+
+    // 所有LockManager共用的后台死锁检测线程
+    private static final ScheduledExecutorService DETECTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "deadlock-detector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 死锁检测的统计信息
+    private final AtomicLong deadlocksDetected = new AtomicLong();
+    private final AtomicLong detectionRuns = new AtomicLong();
+    private final AtomicLong detectionNanos = new AtomicLong();
+
+    // 进入等待队列的加锁请求从入队到拿到锁(或被回滚)的耗时
+    private final LatencyHistogram lockWaitTime = new LatencyHistogram();
+
+    /**
+     * 锁表的一个分片
+     * latch保护本分片的lockStateMap以及其中所有PageLock
+     */
+    private static class Stripe {
+        final ReentrantLock latch = new ReentrantLock();
+        // Key： Page资源， Value: page上的锁表项，包含持有者列表和FIFO等待队列
+        final Map<PageId, PageLock> lockStateMap = new HashMap<>();
+    }
+
+    /**
+     * 一个page上的锁表项
+     * holders: 当前持有锁的事务和锁类型
+     * waiters: 按到达顺序排队等待的请求，只有队头可以被授予锁
+     */
+    private static class PageLock {
+        final List<LockState> holders = new ArrayList<>();
+        final LinkedList<LockState> waiters = new LinkedList<>();
+        // 持有者释放锁或队头变化时，唤醒在该page上等待的事务
+        final Condition released;
+
+        PageLock(Condition released) {
+            this.released = released;
+        }
+
+        LockState holderOf(TransactionId tid) {
+            for(LockState lockState : holders) {
+                if(lockState.getTid().equals(tid)) {
+                    return lockState;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 不考虑排队顺序，tid的perm锁是否与其他事务持有的锁兼容
+         */
+        boolean compatible(TransactionId tid, Permissions perm) {
+            for(LockState lockState : holders) {
+                if(lockState.getTid().equals(tid)) continue;
+                if(perm == Permissions.READ_WRITE || lockState.getPerm() == Permissions.READ_WRITE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isFree() {
+            return holders.isEmpty() && waiters.isEmpty();
+        }
+    }
+
     public LockManager() {
-        lockStateMap = new ConcurrentHashMap<>();
-        waitingInfo = new ConcurrentHashMap<>();
+        this(DeadlockPolicy.DETECTION);
     }
 
-    //=======================申请锁， 加锁， 解锁===========================
+    /**
+     * @param policy 处理死锁的策略，只有DETECTION需要维护waits-for图和后台检测线程
+     */
+    public LockManager(DeadlockPolicy policy) {
+        this.policy = policy;
+        stripes = new Stripe[NUM_STRIPES];
+        for(int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        lockedPagesMap = new ConcurrentHashMap<>();
+        waitingInfo = new ConcurrentHashMap<>();
+        waitsForGraph = new ConcurrentHashMap<>();
+        victims = ConcurrentHashMap.newKeySet();
+        if(policy == DeadlockPolicy.DETECTION) {
+            DetectionTask.schedule(this);
+        }
+    }
 
     /**
-     * 共享锁
-     * 如果tid在pid上有读锁，返回true
-     * 如果tid在pid上有写锁，或者没有锁而且tid可以给pid加读锁，则加锁后返回true
-     * 如果tid不能给pid加读锁，返回false
-     * @param tid
-     * @param pid
-     * @return 返回tid能否在pid上加锁
+     * 周期性执行死锁检测的任务
+     * 只持有LockManager的弱引用，LockManager被回收后(例如重置BufferPool)任务自动取消
      */
-    public synchronized boolean grantSLock(TransactionId tid, PageId pid){
-        ArrayList<LockState> lockStates = (ArrayList<LockState>) lockStateMap.get(pid);
-
-        if(lockStates != null && lockStates.size() != 0) {
-            if(lockStates.size() == 1) { //pid上只有一个锁
-                Iterator<LockState> iterator = lockStates.iterator();
-                LockState lockState = iterator.next();
-                if(lockState.getTid().equals(tid)){ // 通过事务id判断是否为本事务的锁
-                    // 如果是自己锁：读锁直接返回，写锁则加锁后返回
-                    return lockState.getPerm() == Permissions.READ_ONLY || lock(pid, tid, Permissions.READ_ONLY);
-                } else {
-                    // 如果是别人的读锁，则加锁后再返回; 如果是别人的写锁，陷入阻塞队列
-                    return lockState.getPerm() == Permissions.READ_ONLY ? lock(pid, tid, Permissions.READ_ONLY) :
-                            wait(tid, pid);
-                }
-            } else { // pid有多个锁
-                // 1. 读锁 + 写锁，都为tid的锁
-                // 2. 读锁 + 写锁，都不是tid的锁
-                // 3. 读锁 + 读锁，一个是tid的一个不是pid的
-                // 4. 读锁 + 读锁， 都没有tid的锁
-                for(LockState lockState : lockStates) {
-                    if(lockState.getPerm() == Permissions.READ_WRITE) { //代表有写锁，判断写锁是否为自己的
-                        // 是自己的直接返回，不是自己的阻塞
-                        return lockState.getTid().equals(tid) || wait(tid, pid);
-                    } else if(lockState.getTid().equals(tid)) {
-                        // 有自己的读锁
-                        return true;
-                    }
+    private static class DetectionTask implements Runnable {
+        private final WeakReference<LockManager> lockManagerRef;
+        private volatile Future<?> future;
+
+        private DetectionTask(LockManager lockManager) {
+            this.lockManagerRef = new WeakReference<>(lockManager);
+        }
+
+        static void schedule(LockManager lockManager) {
+            DetectionTask task = new DetectionTask(lockManager);
+            task.future = DETECTOR.scheduleWithFixedDelay(task, DETECTION_INTERVAL, DETECTION_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            LockManager lockManager = lockManagerRef.get();
+            if(lockManager == null) {
+                if(future != null) {
+                    future.cancel(false);
                 }
-                // 遍历完后都没有自己的读锁和写锁，则加个写锁后返回
-                return lock(pid, tid, Permissions.READ_ONLY);
+                return;
+            }
+            try {
+                lockManager.detectDeadlocks();
+            } catch (RuntimeException e) {
+                // 不能让异常终止周期任务
+                e.printStackTrace();
             }
-        } else {
-            return lock(pid, tid, Permissions.READ_ONLY);
         }
     }
 
     /**
-     * 排他锁
-     * 若tid在pid上已经有写锁，则返回true
-     * 若只有tid拥有pid的读锁，或者tid在pid上没有锁，但tid可以给pid加写锁，则加锁后返回true
-     * 若tid此时不能给pid加写锁，返回false
+     * @return pid所在的分片，高位异或到低位，让相邻的page尽量分散
+     */
+    private Stripe stripeOf(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (NUM_STRIPES - 1)];
+    }
+
+    //=======================申请锁， 加锁， 解锁===========================
+
+    /**
+     * 为tid申请pid上的perm锁，拿不到锁时阻塞，直到锁被释放后被唤醒
+     * 若tid已经持有足够的锁，直接返回
+     * 若tid是pid唯一的读锁持有者，可以直接升级为写锁；升级请求排在等待队列的最前面
+     * 其他请求在等待队列非空时必须排队(FIFO)，避免写锁被源源不断的读锁饿死
+     * DETECTION策略下死锁由后台线程检测，这里只负责等待，被选为牺牲者时抛出异常
+     * WAIT_DIE/WOUND_WAIT策略下每次要等待前按时间戳决定自己回滚还是wound阻塞自己的事务
      * @param tid
      * @param pid
-     * @return 返回tid能否持有pid的排他锁
+     * @param perm
+     * @throws TransactionAbortedException 如果tid被选为死锁的牺牲者、被wound，或者在WAIT_DIE下需要回滚
+     * @throws InterruptedException 如果等待中的线程被中断
      */
-    public synchronized boolean grantXLock(TransactionId tid, PageId pid) {
-        ArrayList<LockState> lockStates = (ArrayList<LockState>) lockStateMap.get(pid);
-        if(lockStates != null && lockStates.size() == 0) {
-            if(lockStates.size() == 1) { // 若pid上只有一个锁
-                LockState lockState = lockStates.get(0);
-                //如果是自己的写锁，直接返回
-                //如果是自己的读锁，加写锁后返回
-                //如果是别的事务的锁，则必须等待
-                return lockState.getTid().equals(tid) ? lockState.getPerm() == Permissions.READ_WRITE || lock(pid,
-                        tid,Permissions.READ_WRITE) : wait(tid, pid);
+    public void acquireLock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, InterruptedException {
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            if(victims.contains(tid)) {
+                throw new TransactionAbortedException();
+            }
+            PageLock pageLock = stripe.lockStateMap.computeIfAbsent(pid, k -> new PageLock(stripe.latch.newCondition()));
+            LockState held = pageLock.holderOf(tid);
+            if(held != null && (held.getPerm() == Permissions.READ_WRITE || perm == Permissions.READ_ONLY)) {
+                return; // 已经持有足够的锁
+            }
+
+            boolean upgrade = held != null;
+            if((upgrade || pageLock.waiters.isEmpty()) && pageLock.compatible(tid, perm)) {
+                grant(pageLock, pid, tid, perm);
+                return;
+            }
+
+            // 拿不到锁，进入等待队列
+            LockState request = new LockState(tid, perm);
+            if(upgrade) {
+                pageLock.waiters.addFirst(request);
             } else {
-                // 有多个锁
-                // 1. 两个锁都属于tid，读锁 + 写锁 , 返回ture
-                // 2. 两个锁都不属于tid，读锁 + 写锁, 需要wait
-                // 3. 多个读锁，需要wait
-                if(lockStates.size() == 2) {
-                    for(LockState lockState : lockStates) {
-                        if(lockState.getTid().equals(tid) && lockState.getPerm() == Permissions.READ_WRITE) {
-                            return true;
+                pageLock.waiters.addLast(request);
+            }
+            waitingInfo.put(tid, pid);
+            updateWaitsFor(pageLock);
+            long waitStart = System.nanoTime();
+            try {
+                while(pageLock.waiters.peekFirst() != request || !pageLock.compatible(tid, perm)) {
+                    if(victims.contains(tid)) {
+                        throw new TransactionAbortedException();
+                    }
+                    if(policy != DeadlockPolicy.DETECTION) {
+                        List<TransactionId> toWound = preventDeadlock(pageLock, tid);
+                        if(!toWound.isEmpty()) {
+                            // wound需要唤醒其他分片上的等待者，先放开本分片，避免分片之间互相等待
+                            stripe.latch.unlock();
+                            try {
+                                for(TransactionId younger : toWound) {
+                                    wound(younger);
+                                }
+                            } finally {
+                                stripe.latch.lock();
+                            }
+                            continue; // 放开分片期间状态可能已经改变，重新检查
                         }
                     }
+                    pageLock.released.await();
                 }
+                grant(pageLock, pid, tid, perm);
+            } finally {
+                lockWaitTime.record(System.nanoTime() - waitStart);
+                pageLock.waiters.remove(request);
+                waitingInfo.remove(tid);
+                waitsForGraph.remove(tid);
+                updateWaitsFor(pageLock);
+                // 队头发生了变化，后面的等待者可能可以拿到锁了
+                pageLock.released.signalAll();
+                if(pageLock.isFree()) {
+                    stripe.lockStateMap.remove(pid);
+                }
+            }
+        } finally {
+            stripe.latch.unlock();
+        }
+    }
 
-                return wait(tid, pid);
+    /**
+     * 将perm锁授予tid，如果tid已经持有读锁，则将其升级
+     */
+    private void grant(PageLock pageLock, PageId pid, TransactionId tid, Permissions perm) {
+        LockState held = pageLock.holderOf(tid);
+        if(held != null) {
+            pageLock.holders.remove(held);
+        }
+        pageLock.holders.add(new LockState(tid, perm));
+        lockedPagesMap.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(pid);
+        updateWaitsFor(pageLock);
+    }
+
+    /**
+     * 重新计算pageLock上所有等待者在waits-for图中的边
+     * 事务T在页面P上等待时，T等待的是：P上除T以外的所有锁持有者，以及P的等待队列中排在T之前的请求者
+     * 调用者必须持有pageLock所在分片的latch
+     */
+    private void updateWaitsFor(PageLock pageLock) {
+        if(policy != DeadlockPolicy.DETECTION) return;
+        for(LockState waiter : pageLock.waiters) {
+            TransactionId tid = waiter.getTid();
+            waitsForGraph.put(tid, Collections.unmodifiableList(blockersOf(pageLock, tid)));
+        }
+    }
+
+    /**
+     * @return 阻塞了tid的事务：pageLock上除tid以外的所有锁持有者，以及等待队列中排在tid之前的请求者
+     */
+    private static List<TransactionId> blockersOf(PageLock pageLock, TransactionId tid) {
+        List<TransactionId> blockers = new ArrayList<>();
+        for(LockState holder : pageLock.holders) {
+            if(!holder.getTid().equals(tid)) {
+                blockers.add(holder.getTid());
             }
-        } else { //pid上没有锁
-            return lock(pid, tid, Permissions.READ_WRITE);
         }
+        for(LockState waiter : pageLock.waiters) {
+            if(waiter.getTid().equals(tid)) break;
+            blockers.add(waiter.getTid());
+        }
+        return blockers;
     }
 
-    private synchronized boolean wait(TransactionId tid, PageId pid) {
-        waitingInfo.put(tid, pid);
-        return false;
+    /**
+     * WAIT_DIE/WOUND_WAIT下，tid要在pageLock上等待前调用，按事务时间戳(TransactionId.isOlderThan)避免死锁
+     * WAIT_DIE: 只要有比tid更老的阻塞者，tid就回滚自己，否则等待
+     * WOUND_WAIT: 比tid更年轻的阻塞者都要被wound，然后tid等待
+     * 调用者必须持有pageLock所在分片的latch
+     * @return 需要被wound的事务
+     * @throws TransactionAbortedException WAIT_DIE下tid需要回滚
+     */
+    private List<TransactionId> preventDeadlock(PageLock pageLock, TransactionId tid)
+            throws TransactionAbortedException {
+        List<TransactionId> toWound = new ArrayList<>();
+        for(TransactionId blocker : blockersOf(pageLock, tid)) {
+            boolean blockerIsOlder = blocker.isOlderThan(tid);
+            if(policy == DeadlockPolicy.WAIT_DIE && blockerIsOlder) {
+                throw new TransactionAbortedException();
+            }
+            if(policy == DeadlockPolicy.WOUND_WAIT && !blockerIsOlder && !victims.contains(blocker)) {
+                toWound.add(blocker);
+            }
+        }
+        return toWound;
     }
 
-    private synchronized boolean lock(PageId pid, TransactionId tid, Permissions perm) {
-        LockState lockState = new LockState(tid, perm);
-        ArrayList<LockState> lockStates = (ArrayList<LockState>) lockStateMap.get(pid);
-        if(lockStates == null) {
-            lockStates = new ArrayList<>();
+    /**
+     * WOUND_WAIT下回滚更年轻的事务victim
+     * victim如果正在等待锁，立即被唤醒并回滚；否则在它下一次申请锁时回滚
+     * 调用者不能持有任何分片的latch
+     */
+    private void wound(TransactionId victim) {
+        victims.add(victim);
+        PageId pid = waitingInfo.get(victim);
+        if(pid == null) return;
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            PageLock pageLock = stripe.lockStateMap.get(pid);
+            if(pageLock != null) {
+                pageLock.released.signalAll();
+            }
+        } finally {
+            stripe.latch.unlock();
         }
-        lockStates.add(lockState);
-        lockStateMap.put(pid, lockStates);
-        waitingInfo.remove(tid);
-        return true;
     }
 
     /**
-     * 解锁，将pid对应的lockstates list中锁消除
+     * 解锁，将pid对应的lockstates list中锁消除，并唤醒在pid上等待的事务
      * @param tid
      * @param pid
      * @return
      */
-    public synchronized boolean unlock(TransactionId tid, PageId pid) {
-        ArrayList<LockState> lockStates = (ArrayList<LockState>) lockStateMap.get(pid);
-
-        if(lockStates == null || lockStates.size() == 0) return false;
-        LockState lockState = getLockState(tid, pid);
-        if(lockState == null) return false;
-        lockStates.remove(lockState);
-        lockStateMap.put(pid, lockStates);
-        return true;
+    public boolean unlock(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            PageLock pageLock = stripe.lockStateMap.get(pid);
+            if(pageLock == null) return false;
+            LockState lockState = pageLock.holderOf(tid);
+            if(lockState == null) return false;
+            pageLock.holders.remove(lockState);
+            Set<PageId> lockedPages = lockedPagesMap.get(tid);
+            if(lockedPages != null) {
+                lockedPages.remove(pid);
+            }
+            if(pageLock.isFree()) {
+                stripe.lockStateMap.remove(pid);
+            } else {
+                updateWaitsFor(pageLock);
+                pageLock.released.signalAll();
+            }
+            return true;
+        } finally {
+            stripe.latch.unlock();
+        }
     }
 
 
@@ -149,8 +396,10 @@ public class LockManager {
      * 释放tid所有的资源
      * @param tid
      */
-    public synchronized void releaseTransactionLocks(TransactionId tid) {
-        List<PageId> toRelease = getAllLockedPagesById(tid);
+    public void releaseTransactionLocks(TransactionId tid) {
+        victims.remove(tid);
+        Set<PageId> toRelease = lockedPagesMap.remove(tid);
+        if(toRelease == null) return;
         for(PageId pid : toRelease) {
             unlock(tid, pid);
         }
@@ -164,15 +413,15 @@ public class LockManager {
      * @param pid
      * @return 返回当前页面pid的tid持有的锁状态
      */
-    public synchronized LockState getLockState(TransactionId tid, PageId pid) {
-        List<LockState> lockStates = lockStateMap.get(pid);
-        if(lockStates == null || lockStates.size() == 0) return null;
-        for(LockState lockState : lockStates) {
-            if(lockState.getTid().equals(tid)) {
-                return lockState;
-            }
+    public LockState getLockState(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            PageLock pageLock = stripe.lockStateMap.get(pid);
+            return pageLock == null ? null : pageLock.holderOf(tid);
+        } finally {
+            stripe.latch.unlock();
         }
-        return null;
     }
 
     /**
@@ -180,132 +429,146 @@ public class LockManager {
      * @param tid
      * @return 返回tid持有的所有页面
      */
-    public synchronized List<PageId> getAllLockedPagesById(TransactionId tid) {
-        List<PageId> pids = new ArrayList<>();
-        for(Map.Entry<PageId, List<LockState>> entry : lockStateMap.entrySet()) {
-            for(LockState lockState : entry.getValue()) {
-                if(lockState.getTid().equals(tid)) {
-                    pids.add(entry.getKey());
-                }
-            }
-        }
-        return pids;
+    public List<PageId> getAllLockedPagesById(TransactionId tid) {
+        Set<PageId> lockedPages = lockedPagesMap.get(tid);
+        return lockedPages == null ? new ArrayList<>() : new ArrayList<>(lockedPages);
+    }
+
+    /**
+     * @return tid是否持有pid上的锁
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> lockedPages = lockedPagesMap.get(tid);
+        return lockedPages != null && lockedPages.contains(pid);
     }
 
     // ========================================查询与修改两个map信息方法======================
 
     //========================检查死锁====================================
     /**
-     * 通过检测资源的依赖图根据是否存在环来判断是否已经陷入死锁
-     * 具体实现：本事务tid需要检测“正在等待的资源的拥有者是否已经直接或间接的在等待本事务tid已经拥有的资源”
-     * <p>
-     * 如图，括号内P1,P2,P3为资源,T1,T2,T3为事务
-     * 虚线以及其上的字母R加上箭头组成了拥有关系，如果是字母W则代表正在等待写锁
-     * 例如下图左上方T1到P1的一连串符号表示的是T1此时拥有P1的读锁
-     * 图的边缘可以是虚线的转折点，例如为了表示T2正在等待P1
-     * <p>
-     * //   ---T1---R-->P1<-------
-     * //                       W
-     * //  ----------------------
-     * //  W
-     * //  ---T2---R-->P2<-------
-     * //                       W
-     * //  ----------------------
-     * //  W
-     * //  ---T3---R-->P3
-     * <p>
-     * 上图的含义是，Ti拥有了对Pi的读锁(1<=i<=3)
-     * 因为T1在P1上有了读锁，所以T2正在等待P1的写锁
-     * 同理，T3正在等待P2的写锁
+     * 后台线程周期性调用：在waits-for图的快照上找环，每个环回滚其中最年轻(id最大)的事务
      * <p>
-     * 现在假设的情景是，此时T1要申请对P3的写锁，进入等待，这将会造成死锁
-     * 而接下来调用这个方法判断，就可以得知已经产生死锁从而回滚事务（具体在BufferPool的getPage()方法的while循环开始处）
+     * 例如：T1持有P1的读锁，T2持有P2的读锁并在等待P1的写锁，T3持有P3的读锁并在等待P2的写锁
+     * 此时T1申请P3的写锁，则 T1 -> T3 -> T2 -> T1 成环，回滚T3
      * <p>
-     * 导致死锁的本质原因就是将等待的资源(P3)的拥有者(T3)间接的在等待T1拥有的资源(P1)
-     * 下面方法的注释以这个例子为基础，具体解释这个方法是如何判断出“T1在P3上的等待已经造成了死锁”的
-     * @param tid
-     * @param pid
-     * @return true: tid陷入死锁，false: 没有陷入死锁
+     * 快照中的边来自不同分片，不是同一时刻的状态，偶尔可能误判，误判只会多回滚一个事务
      */
-    public synchronized boolean deadLockOccurred(TransactionId tid, PageId pid) {
-        List<LockState> lockStates = lockStateMap.get(pid); // 当前页面的锁状态
-        // 没有锁，当然不会陷入死锁
-        if(lockStates == null || lockStates.size() == 0) {
-            return false;
-        }
-
-        List<PageId> pagesLockedBytid = getAllLockedPagesById(tid); // tid锁住的资源
-        for(LockState lockState : lockStates) {
-            TransactionId holder = lockState.getTid(); // pid页面锁的持有者
-            if(!holder.equals(tid)) { // pid不是被tid锁住，而是被另一个holder锁住
-                // 当前页面锁持有者holder 想请求 tid 锁住的资源 pagesLockedBytid， 是否需要等待
-                // 需要等待代表： holder请求tid锁住的，tid想拥有holder当前锁住的，即发生了死锁
-                boolean isWaiting = isWaitingResources(holder, pagesLockedBytid, tid);
-                if(isWaiting) {
-                    return true;
+    private void detectDeadlocks() {
+        if(waitsForGraph.isEmpty()) return;
+        long start = System.nanoTime();
+        Map<TransactionId, List<TransactionId>> graph = new HashMap<>(waitsForGraph);
+        List<TransactionId> cycle;
+        while((cycle = findCycle(graph)) != null) {
+            TransactionId victim = cycle.get(0);
+            for(TransactionId tid : cycle) {
+                if(victim.isOlderThan(tid)) {
+                    victim = tid;
                 }
             }
+            if(abortWaiter(victim)) {
+                deadlocksDetected.incrementAndGet();
+            }
+            graph.remove(victim); // 回滚victim后环被打破，继续找剩下的环
         }
-        return false;
+        detectionRuns.incrementAndGet();
+        detectionNanos.addAndGet(System.nanoTime() - start);
     }
 
     /**
-     *
-     * @param holder 当前事务需要资源的持有者
-     * @param pageIds 当前事务持有的资源
-     * @param tid 当前事务
-     * @return holder是否需要等待 tid锁住的 pageIds, 等待：true, 不等待： false
-     *
-     * <>
-     *     直接等待
-     *     tid ---------> cur(holder)
-     *     holder------->pageIds(tid)
-     *     holder----waiting------>waitingPage
-     *     如果pageIds 中包含 waitingPage，代表死锁
-     *
-     *     间接等待
-     *                                         _______ holder1  ------> hold by tid?  ________ 直接等待
-     *                                       /                                       / yes
-     *     holder----waiting------->waitingPage  _______ holder2  ------> hold by tid?
-     *                                       \                                      \ no
-     *                                         ------- holder3 ------> hold by tid?   看看 holder1、2、3的持有者是不是tid
-     *                                                                                      ↓
-     *                                                           递归     iswaitingResources(holder1, pageIds, tid)
-     * </>
+     * 在graph中找一个环(迭代DFS)，没有环返回null
      */
-    private boolean isWaitingResources(TransactionId holder, List<PageId> pageIds, TransactionId tid) {
-        PageId waitingPage = waitingInfo.get(holder); // holder正在等待的资源
-
-        if(waitingPage == null) { // holder不需要等待资源，返回fasle
-            return false;
-        }
-
-        for(PageId pageId: pageIds) {
-            if(pageId.equals(waitingPage)) {
-                // 如果holder正在等待的资源，恰巧是tid锁住的资源
-                // holder 请求tid 锁住的资源
-                // tid 请求 holder锁住的页面
-                // 则陷入死锁
-                return true;
+    private static List<TransactionId> findCycle(Map<TransactionId, List<TransactionId>> graph) {
+        // 不在map中：未访问， true：在当前DFS路径上， false：已经访问完
+        Map<TransactionId, Boolean> onPath = new HashMap<>();
+        for(TransactionId root : graph.keySet()) {
+            if(onPath.containsKey(root)) continue;
+            Deque<TransactionId> path = new ArrayDeque<>();
+            Deque<Iterator<TransactionId>> edges = new ArrayDeque<>();
+            path.push(root);
+            edges.push(edgesOf(graph, root));
+            onPath.put(root, true);
+            while(!path.isEmpty()) {
+                Iterator<TransactionId> it = edges.peek();
+                if(!it.hasNext()) {
+                    onPath.put(path.pop(), false);
+                    edges.pop();
+                    continue;
+                }
+                TransactionId next = it.next();
+                Boolean state = onPath.get(next);
+                if(state == null) {
+                    path.push(next);
+                    edges.push(edgesOf(graph, next));
+                    onPath.put(next, true);
+                } else if(state) {
+                    // next在当前路径上，路径中从栈顶到next的部分构成环
+                    List<TransactionId> cycle = new ArrayList<>();
+                    for(TransactionId tid : path) {
+                        cycle.add(tid);
+                        if(tid.equals(next)) break;
+                    }
+                    return cycle;
+                }
             }
         }
+        return null;
+    }
 
-        // 到达这里说明holder并不直接等待pageIds中的任意一个page, 但不代表holder不在等待，有可能是间接在等待
-        // 如果waitingPage的持有者中的某一个正在等待holder锁住的pagesIds中的一个，说明holder是在间接等待
-        List<LockState> waitedByHolder = lockStateMap.get(waitingPage); // hoder等待资源的锁状态
-        if(waitedByHolder == null || waitedByHolder.size() == 0) return false; // holder等待的资源非常自由，不需要等待
+    private static Iterator<TransactionId> edgesOf(Map<TransactionId, List<TransactionId>> graph, TransactionId tid) {
+        List<TransactionId> blockers = graph.get(tid);
+        return blockers == null ? Collections.<TransactionId>emptyIterator() : blockers.iterator();
+    }
 
-        for(LockState lockState : waitedByHolder) {
-            TransactionId childHolder = lockState.getTid(); // holder等待资源的持有者,
-            if(!childHolder.equals(tid)) { // 如果持有者不是tid
-                boolean isWaiting = isWaitingResources(childHolder, pageIds, tid); // 判断
-                if(isWaiting) return true;
+    /**
+     * 将正在等待的victim标记为牺牲者并唤醒它
+     * @return victim是否仍在等待并且被成功标记
+     */
+    private boolean abortWaiter(TransactionId victim) {
+        PageId pid = waitingInfo.get(victim);
+        if(pid == null) return false;
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            PageLock pageLock = stripe.lockStateMap.get(pid);
+            if(pageLock == null || !pid.equals(waitingInfo.get(victim))) {
+                return false; // victim已经不再等待了
             }
+            victims.add(victim);
+            pageLock.released.signalAll();
+            return true;
+        } finally {
+            stripe.latch.unlock();
         }
+    }
 
-        return false;
+    /**
+     * @return 后台线程检测到并回滚的死锁数
+     */
+    public long getDeadlocksDetected() {
+        return deadlocksDetected.get();
+    }
+
+    /**
+     * @return 后台死锁检测执行的次数(不包括waits-for图为空时跳过的检测)
+     */
+    public long getDetectionRuns() {
+        return detectionRuns.get();
+    }
+
+    /**
+     * @return 死锁检测累计花费的时间(ns)
+     */
+    public long getDetectionTimeNanos() {
+        return detectionNanos.get();
     }
 
     // ==========================================检测死锁 end ============================================
 
+    /**
+     * @return 需要等待的加锁请求的等待时间分布，请求数即为histogram的count
+     */
+    public LatencyHistogram getLockWaitHistogram() {
+        return lockWaitTime.snapshot();
+    }
+
 }
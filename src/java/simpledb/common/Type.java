@@ -4,6 +4,7 @@ import simpledb.storage.StringField;
 import simpledb.storage.Field;
 import simpledb.storage.IntField;
 
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.io.*;
 
@@ -28,6 +29,16 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf) {
+            return new IntField(buf.getInt());
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new IntField(buf.getInt(offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -46,6 +57,25 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf) {
+            int strLen = buf.getInt();
+            byte[] bs = new byte[strLen];
+            buf.get(bs);
+            buf.position(buf.position() + STRING_LEN - strLen);
+            return new StringField(new String(bs), STRING_LEN);
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = buf.getInt(offset);
+            byte[] bs = new byte[strLen];
+            for (int i = 0; i < strLen; i++) {
+                bs[i] = buf.get(offset + 4 + i);
+            }
+            return new StringField(new String(bs), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -64,4 +94,21 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the current position of the specified buffer. The position
+   *   is advanced by {@link #getLen()} bytes.
+   * @param buf The buffer to read from
+   */
+    public abstract Field parse(ByteBuffer buf);
+
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer at the given absolute offset. The
+   *   position of the buffer is not modified.
+   * @param buf The buffer to read from
+   * @param offset The index of the first byte of the field in buf
+   */
+    public abstract Field parse(ByteBuffer buf, int offset);
+
 }
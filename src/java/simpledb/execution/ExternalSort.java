@@ -0,0 +1,339 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SortMergeJoin使用的外部排序，把加入的tuple按一个字段升序排列
+ *
+ * 内存预算以内的tuple排序后留在内存中；超出预算时每攒满一批就排序写成一个临时文件(run)，
+ * 加入结束后把所有run归并成一个文件。归并时每个run占一个读缓冲，一次归并的run数以内存预算为限，
+ * run更多时分多趟归并。输入已经有序时不排序，超出预算后直接按顺序追加到结果文件
+ *
+ * 结果通过一个游标顺序读取，可以seek回之前的位置重复读取。字段都是定长序列化的，
+ * 第i个tuple在结果文件中的偏移就是i * td.getSize()，游标按块读入文件，seek到当前块内不用读磁盘
+ */
+class ExternalSort {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final TupleDesc td;
+    private final TupleComparator comparator;
+    private final boolean presorted;
+    private final int maxMemoryTuples;
+    // 一次最多归并的run数，这些run的读缓冲加上结果文件的写缓冲不超过内存预算
+    private final int maxFanIn;
+    private final int recordSize;
+
+    private List<Tuple> memory = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    // 最终结果文件，为null时结果在memory中
+    private File file;
+    // presorted时追加写入file
+    private DataOutputStream out;
+    private long size;
+    private boolean finished;
+
+    // 下一个要读的tuple的位置
+    private long position;
+    private FileChannel channel;
+    private ByteBuffer block;
+    // block中第一个tuple的位置和tuple数
+    private long blockStart;
+    private int blockTuples;
+
+    /**
+     * @param presorted 加入的tuple已经按field升序排列
+     */
+    ExternalSort(TupleDesc td, int field, boolean presorted, long memoryBudget) {
+        this.td = td;
+        this.comparator = new TupleComparator(field, true);
+        this.presorted = presorted;
+        // 与HashEquiJoin相同的粗略估算，不含hash表的开销
+        long tupleBytes = td.getSize() + HashEquiJoin.TUPLE_OVERHEAD + (long) HashEquiJoin.FIELD_OVERHEAD * td.numFields();
+        this.maxMemoryTuples = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBudget / tupleBytes));
+        this.maxFanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / BUFFER_SIZE - 1));
+        this.recordSize = td.getSize();
+    }
+
+    void add(Tuple t) throws DbException {
+        if(out != null) {
+            write(out, t);
+        } else {
+            memory.add(t);
+            if(memory.size() >= maxMemoryTuples) {
+                flushMemory();
+            }
+        }
+        size++;
+    }
+
+    /**
+     * 把memory中的tuple写入磁盘：presorted时写入结果文件并继续追加，否则排序后写成一个run
+     */
+    private void flushMemory() throws DbException {
+        try {
+            File f = createTempFile();
+            DataOutputStream runOut = openOutput(f);
+            if(!presorted) {
+                memory.sort(comparator);
+            }
+            for(Tuple t : memory) {
+                write(runOut, t);
+            }
+            memory.clear();
+            if(presorted) {
+                file = f;
+                out = runOut;
+            } else {
+                runOut.close();
+                runs.add(f);
+            }
+        } catch (IOException e) {
+            throw new DbException("写入排序临时文件失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 加入结束，排好序的结果可以开始读取
+     */
+    void finish() throws DbException {
+        finished = true;
+        try {
+            if(out != null) {
+                out.close();
+                out = null;
+            } else if(!runs.isEmpty()) {
+                if(!memory.isEmpty()) {
+                    flushMemory();
+                }
+                merge();
+            } else if(!presorted) {
+                memory.sort(comparator);
+                // 按排好的顺序重新创建tuple，顺序读取时访问的内存是连续的
+                for(int k = 0; k < memory.size(); k++) {
+                    Tuple t = memory.get(k);
+                    Tuple copy = new Tuple(td);
+                    for(int i = 0; i < td.numFields(); i++) {
+                        copy.setField(i, t.getField(i));
+                    }
+                    memory.set(k, copy);
+                }
+            }
+            if(file != null) {
+                memory = null;
+                channel = new FileInputStream(file).getChannel();
+                block = ByteBuffer.allocate(Math.max(1, BUFFER_SIZE / recordSize) * recordSize);
+                blockTuples = 0;
+            }
+        } catch (IOException e) {
+            throw new DbException("写入排序临时文件失败: " + e.getMessage());
+        }
+        position = 0;
+    }
+
+    /**
+     * 把所有run归并成结果文件。run多于maxFanIn时先把最早的maxFanIn个run归并成一个新run放到最后，
+     * 直到剩下的run可以一次归并完，每个tuple大约经过log(run数)/log(maxFanIn)趟归并
+     */
+    private void merge() throws IOException, DbException {
+        try {
+            while(runs.size() > maxFanIn) {
+                List<File> group = runs.subList(0, maxFanIn);
+                File merged = mergeRuns(group);
+                group.clear();
+                runs.add(merged);
+            }
+            file = mergeRuns(runs);
+        } finally {
+            // 归并成功时run已经删除，出错时删除剩下的run
+            for(File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * 把group中的run归并成一个新的临时文件，成功后删除这些run
+     */
+    private File mergeRuns(List<File> group) throws IOException, DbException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> comparator.compare(a.head, b.head));
+        List<RunReader> readers = new ArrayList<>(group.size());
+        File merged = createTempFile();
+        boolean done = false;
+        try {
+            for(File run : group) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if(reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            try (DataOutputStream mergeOut = openOutput(merged)) {
+                while(!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    write(mergeOut, reader.head);
+                    if(reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+            done = true;
+        } finally {
+            for(RunReader reader : readers) {
+                reader.in.close();
+            }
+            if(!done) {
+                merged.delete();
+            }
+        }
+        for(File run : group) {
+            run.delete();
+        }
+        return merged;
+    }
+
+    private class RunReader {
+        final DataInputStream in;
+        long remaining;
+        Tuple head;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+            remaining = run.length() / recordSize;
+        }
+
+        boolean advance() throws DbException {
+            if(remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = new Tuple(td);
+            try {
+                for(int i = 0; i < td.numFields(); i++) {
+                    head.setField(i, td.getFieldType(i).parse(in));
+                }
+            } catch (ParseException e) {
+                throw new DbException("读取排序临时文件失败: " + e.getMessage());
+            }
+            return true;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long position() {
+        return position;
+    }
+
+    void seek(long position) {
+        this.position = position;
+    }
+
+    boolean hasNext() {
+        return position < size;
+    }
+
+    Tuple next() throws DbException {
+        if(!finished || position >= size) {
+            throw new IllegalStateException("no more sorted tuples");
+        }
+        if(file == null) {
+            return memory.get((int) position++);
+        }
+        if(position < blockStart || position >= blockStart + blockTuples) {
+            readBlock();
+        }
+        int offset = (int) (position - blockStart) * recordSize;
+        Tuple t = new Tuple(td);
+        for(int i = 0; i < td.numFields(); i++) {
+            t.setField(i, td.getFieldType(i).parse(block, offset + td.getOffset(i)));
+        }
+        position++;
+        return t;
+    }
+
+    private void readBlock() throws DbException {
+        block.clear();
+        try {
+            long filePosition = position * recordSize;
+            while(block.hasRemaining()) {
+                int n = channel.read(block, filePosition);
+                if(n < 0) {
+                    break;
+                }
+                filePosition += n;
+            }
+        } catch (IOException e) {
+            throw new DbException("读取排序临时文件失败: " + e.getMessage());
+        }
+        block.flip();
+        blockStart = position;
+        blockTuples = block.limit() / recordSize;
+    }
+
+    /**
+     * 删除临时文件，释放内存中的tuple
+     */
+    void delete() {
+        closeQuietly(out);
+        closeQuietly(channel);
+        out = null;
+        channel = null;
+        block = null;
+        if(file != null) {
+            file.delete();
+            file = null;
+        }
+        for(File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        memory = new ArrayList<>();
+        size = 0;
+        position = 0;
+        finished = false;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if(c != null) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static File createTempFile() throws IOException {
+        File f = File.createTempFile("sortmerge", ".run");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static DataOutputStream openOutput(File f) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), BUFFER_SIZE));
+    }
+
+    private void write(DataOutputStream dos, Tuple t) throws DbException {
+        try {
+            for(int i = 0; i < td.numFields(); i++) {
+                t.getField(i).serialize(dos);
+            }
+        } catch (IOException e) {
+            throw new DbException("写入排序临时文件失败: " + e.getMessage());
+        }
+    }
+}
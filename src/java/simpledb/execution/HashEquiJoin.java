@@ -2,27 +2,63 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.common.Type;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
+import java.io.*;
+import java.text.ParseException;
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The HashEquiJoin operator implements an equality join with a hybrid hash
+ * join. The left (outer) child is the build side: its tuples are loaded into
+ * an in-memory hash table, and the tuples of the right child are looked up
+ * in it as they are read.
+ * <p>
+ * If the build side does not fit in the memory budget, both inputs are
+ * partitioned by a hash of the join key. The first partition stays in
+ * memory, and the other partitions are written to temporary files. After the
+ * right child has been read once, each pair of spilled partitions is joined
+ * in turn. Each input is therefore read from the child only once. A build
+ * partition that still does not fit in memory is loaded in budget-sized
+ * chunks, and its probe partition is read once per chunk.
+ * <p>
+ * When both join fields are of type INT_TYPE, the hash table is an
+ * open-addressing table keyed by the primitive int, so building and
+ * probing do not create Field objects or per-key lists.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Default memory budget for the hash table of the build side, in bytes. */
+    public static final long DEFAULT_MEMORY_BUDGET = 32L << 20;
+
+    // 溢出时两边按join key的hash分成2^PARTITION_BITS个partition
+    private static final int PARTITION_BITS = 5;
+    private static final int NUM_PARTITIONS = 1 << PARTITION_BITS;
+
+    // 粗略估算内存中一个tuple在字段数据以外的开销：Tuple对象和字段数组、每个Field对象(ExternalSort也按这两项估算)，
+    // 以及在hash表中的开销，HashMap是Node、ArrayList和key对象，IntHashTable是几个数组中的int和引用
+    static final int TUPLE_OVERHEAD = 32;
+    static final int FIELD_OVERHEAD = 16;
+    private static final int MAP_ENTRY_OVERHEAD = 48;
+    private static final int INT_ENTRY_OVERHEAD = 20;
+
     private final JoinPredicate pred;
     private OpIterator child1, child2;
     private final TupleDesc comboTD;
+    private final long memoryBudget;
+    // 两边的join key都是int时用IntHashTable代替map，hash和比较都不需要创建Field
+    private final boolean intKeys;
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
-     * on
-     * 
+     * on. Uses {@link #DEFAULT_MEMORY_BUDGET}.
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
@@ -31,9 +67,24 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor. Accepts to children to join, the predicate to join them on
+     * and the number of bytes the hash table of the left child may use before
+     * the join spills to disk.
+     */
+    public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, long memoryBudget) {
+        if(memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget must be positive");
+        }
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -41,10 +92,14 @@ public class HashEquiJoin extends Operator {
         return pred;
     }
 
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
-    
+
     public String getJoinField1Name()
     {
 	return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
@@ -54,29 +109,142 @@ public class HashEquiJoin extends Operator {
     {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
-    
+
     final Map<Object, List<Tuple>> map = new HashMap<>();
-    public final static int MAP_SIZE = 20000;
+    transient private IntHashTable intTable;
+    // hash表中的tuple数和内存预算能放下的tuple数
+    transient private int mapTuples;
+    transient private int maxMapTuples;
+
+    // build侧超出内存预算后为true，之后两边的tuple按partition写入临时文件
+    transient private boolean spilled;
+    // 留在内存中、读child2时直接probe的partition，-1表示所有partition都已经写入临时文件
+    transient private int residentPartition;
+    transient private SpillFile[] buildSpills, probeSpills;
+    // 正在join的溢出partition，-1表示还在读child2
+    transient private int partition;
+    // 当前溢出partition的build文件，partition超出内存预算时分块读入，没有读完时不为null
+    transient private DataInputStream buildIn;
+    transient private int buildRemaining;
+    transient private DataInputStream probeIn;
+    transient private int probeRemaining;
+
+    /**
+     * @return t按第field个字段划分到的partition，int key的hash与IntField.hashCode相同
+     */
+    private int partitionOf(Tuple t, int field) {
+        int h = intKeys ? t.getInt(field) : t.getField(field).hashCode();
+        return (h * 0x9E3779B9) >>> (32 - PARTITION_BITS);
+    }
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
+    private void addToMap(Tuple t) {
+        if (intKeys) {
+            intTable.add(t.getInt(pred.getField1()), t);
+        } else {
+            map.computeIfAbsent(t.getField(pred.getField1()), k -> new ArrayList<>()).add(t);
+        }
+        mapTuples++;
+    }
+
+    private void clearMap() {
         map.clear();
+        if (intTable != null) {
+            intTable.clear();
+        }
+        mapTuples = 0;
+        matchRow = -1;
+    }
+
+    /**
+     * @return hash表中的所有tuple
+     */
+    private List<Tuple> tableTuples() {
+        List<Tuple> tuples = new ArrayList<>(mapTuples);
+        if (intKeys) {
+            for (int row = 0; row < intTable.size(); row++) {
+                tuples.add(intTable.get(row));
+            }
+        } else {
+            for (List<Tuple> list : map.values()) {
+                tuples.addAll(list);
+            }
+        }
+        return tuples;
+    }
+
+    /**
+     * 读入child1建立hash表，超出内存预算时转为分partition溢出到临时文件
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        TupleDesc td1 = child1.getTupleDesc();
+        long tupleBytes = td1.getSize() + TUPLE_OVERHEAD + (long) FIELD_OVERHEAD * td1.numFields()
+                + (intKeys ? INT_ENTRY_OVERHEAD : MAP_ENTRY_OVERHEAD);
+        if (intKeys && intTable == null) {
+            intTable = new IntHashTable();
+        }
+        maxMapTuples = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / tupleBytes));
+        clearMap();
+        spilled = false;
+        residentPartition = 0;
+        partition = -1;
         while (child1.hasNext()) {
             t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+            if (spilled) {
+                int p = partitionOf(t1, pred.getField1());
+                if (p != residentPartition) {
+                    buildSpills[p].write(t1);
+                    continue;
+                }
+            }
+            addToMap(t1);
+            if (mapTuples > maxMapTuples) {
+                spill();
+            }
         }
-        return cnt > 0;
+    }
 
+    /**
+     * 第一次超出预算时把第0个以外的partition写入临时文件，只在内存中保留第0个partition，
+     * 第0个partition本身也超出预算时把它也写入临时文件
+     */
+    private void spill() throws DbException {
+        boolean first = !spilled;
+        if (first) {
+            spilled = true;
+            buildSpills = new SpillFile[NUM_PARTITIONS];
+            probeSpills = new SpillFile[NUM_PARTITIONS];
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                buildSpills[i] = new SpillFile();
+                probeSpills[i] = new SpillFile();
+            }
+        }
+        List<Tuple> resident = new ArrayList<>();
+        for (Tuple t : tableTuples()) {
+            int p = partitionOf(t, pred.getField1());
+            if (p != residentPartition) {
+                buildSpills[p].write(t);
+            } else {
+                resident.add(t);
+            }
+        }
+        clearMap();
+        if (first && resident.size() <= maxMapTuples) {
+            for (Tuple t : resident) {
+                addToMap(t);
+            }
+            return;
+        }
+        for (Tuple t : resident) {
+            buildSpills[residentPartition].write(t);
+        }
+        residentPartition = -1;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        build();
         super.open();
     }
 
@@ -87,15 +255,42 @@ public class HashEquiJoin extends Operator {
         this.t1=null;
         this.t2=null;
         this.listIt=null;
-        this.map.clear();
+        clearMap();
+        deleteSpills();
+    }
+
+    private void deleteSpills() {
+        closeQuietly(buildIn);
+        closeQuietly(probeIn);
+        buildIn = null;
+        probeIn = null;
+        if (spilled) {
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                buildSpills[i].delete();
+                probeSpills[i].delete();
+            }
+            buildSpills = null;
+            probeSpills = null;
+            spilled = false;
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         child1.rewind();
         child2.rewind();
+        this.t2 = null;
+        this.listIt = null;
+        this.matchRow = -1;
+        // 没有溢出时hash表仍然完整，只需要重新读child2
+        if (spilled) {
+            deleteSpills();
+            build();
+        }
     }
 
     transient Iterator<Tuple> listIt = null;
+    // intKeys时与t2匹配的下一行在intTable中的行号，-1表示没有了
+    transient private int matchRow = -1;
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -111,13 +306,11 @@ public class HashEquiJoin extends Operator {
      * <p>
      * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
      * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
+     *
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
     private Tuple processList() {
-        t1 = listIt.next();
-
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
 
@@ -132,32 +325,188 @@ public class HashEquiJoin extends Operator {
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
+        while (true) {
+            if (matchRow >= 0) {
+                t1 = intTable.get(matchRow);
+                matchRow = intTable.next(matchRow);
+                return processList();
+            }
+            if (listIt != null && listIt.hasNext()) {
+                t1 = listIt.next();
+                return processList();
+            }
+            Tuple probe = nextProbeTuple();
+            if (probe == null) {
+                return null;
+            }
+            t2 = probe;
+            if (intKeys) {
+                matchRow = intTable.find(probe.getInt(pred.getField2()));
+            } else {
+                List<Tuple> l = map.get(probe.getField(pred.getField2()));
+                listIt = l == null ? null : l.iterator();
+            }
         }
+    }
 
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+    /**
+     * @return 下一个要在hash表中查找的child2的tuple，先是child2中属于内存中partition的tuple，
+     *         再依次是每个溢出partition的probe文件中的tuple，全部处理完时返回null
+     */
+    private Tuple nextProbeTuple() throws DbException, TransactionAbortedException {
+        if (partition < 0) {
+            while (child2.hasNext()) {
+                Tuple t = child2.next();
+                if (!spilled) {
+                    return t;
+                }
+                int p = partitionOf(t, pred.getField2());
+                if (p == residentPartition) {
+                    return t;
+                }
+                // build partition为空时这个tuple不可能有匹配
+                if (buildSpills[p].size() > 0) {
+                    probeSpills[p].write(t);
+                }
+            }
+            if (!spilled) {
+                return null;
+            }
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                buildSpills[i].finishWriting();
+                probeSpills[i].finishWriting();
+            }
+            partition = 0;
+            if (!loadNextChunk()) {
+                return null;
+            }
+        }
+        while (true) {
+            if (probeRemaining > 0) {
+                probeRemaining--;
+                return SpillFile.read(probeIn, child2.getTupleDesc());
+            }
+            if (!loadNextChunk()) {
+                return null;
+            }
+        }
+    }
 
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
+    /**
+     * 把下一块build tuple读入hash表，并从头打开对应partition的probe文件
+     * 当前partition的build文件已经读完时换到下一个两边都有tuple的partition
+     * @return 所有溢出partition都已经处理完时返回false
+     */
+    private boolean loadNextChunk() throws DbException {
+        clearMap();
+        closeQuietly(probeIn);
+        probeIn = null;
+        probeRemaining = 0;
+        if (buildIn == null) {
+            while (partition < NUM_PARTITIONS && (partition == residentPartition
+                    || buildSpills[partition].size() == 0 || probeSpills[partition].size() == 0)) {
+                partition++;
+            }
+            if (partition >= NUM_PARTITIONS) {
+                return false;
+            }
+            buildIn = buildSpills[partition].openInput();
+            buildRemaining = buildSpills[partition].size();
+        }
+        TupleDesc td1 = child1.getTupleDesc();
+        while (buildRemaining > 0 && mapTuples < maxMapTuples) {
+            buildRemaining--;
+            addToMap(SpillFile.read(buildIn, td1));
+        }
+        probeIn = probeSpills[partition].openInput();
+        probeRemaining = probeSpills[partition].size();
+        if (buildRemaining == 0) {
+            closeQuietly(buildIn);
+            buildIn = null;
+            partition++;
+        }
+        return true;
+    }
 
-            return processList();
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // 只读的临时文件，关闭失败不影响结果
+            }
+        }
+    }
 
+    /**
+     * 一个partition的临时文件，第一次写入时才创建，tuple按字段序列化后依次追加
+     */
+    private static class SpillFile {
+
+        private File file;
+        private DataOutputStream out;
+        private int size;
+
+        int size() {
+            return size;
         }
 
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+        void write(Tuple t) throws DbException {
+            try {
+                if (out == null) {
+                    file = File.createTempFile("hashjoin", ".spill");
+                    file.deleteOnExit();
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+                }
+                for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                    t.getField(i).serialize(out);
+                }
+                size++;
+            } catch (IOException e) {
+                throw new DbException("写入hash join临时文件失败: " + e.getMessage());
+            }
         }
 
-        return null;
+        void finishWriting() throws DbException {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new DbException("写入hash join临时文件失败: " + e.getMessage());
+                }
+                out = null;
+            }
+        }
+
+        DataInputStream openInput() throws DbException {
+            try {
+                return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            } catch (IOException e) {
+                throw new DbException("读取hash join临时文件失败: " + e.getMessage());
+            }
+        }
+
+        static Tuple read(DataInputStream in, TupleDesc td) throws DbException {
+            Tuple t = new Tuple(td);
+            try {
+                for (int i = 0; i < td.numFields(); i++) {
+                    t.setField(i, td.getFieldType(i).parse(in));
+                }
+            } catch (ParseException e) {
+                throw new DbException("读取hash join临时文件失败: " + e.getMessage());
+            }
+            return t;
+        }
+
+        void delete() {
+            closeQuietly(out);
+            out = null;
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+            size = 0;
+        }
     }
 
     @Override
@@ -170,5 +519,5 @@ public class HashEquiJoin extends Operator {
         this.child1 = children[0];
         this.child2 = children[1];
     }
-    
+
 }
@@ -0,0 +1,222 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.index.BTreeFile;
+import simpledb.storage.DbFile;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The IndexNestedLoopJoin operator implements a join by looking up the
+ * matching tuples of the inner relation in its B+ tree for every tuple of the
+ * outer relation, with {@link BTreeFile#indexIterator}. Only the B+ tree
+ * pages on the path to the matching leaves are read, instead of the whole
+ * inner table.
+ * <p>
+ * The inner child must be a {@link SeqScan} of a B+ tree file whose key field
+ * is the join field, optionally under Filters (see {@link #canProbe}). The
+ * inner child is not opened; its Filter predicates are applied to the tuples
+ * found in the index.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    // 内侧table的B+树、读取它的事务，以及child2中Filter的谓词
+    private final BTreeFile index;
+    private final TransactionId tid;
+    private final List<Predicate> innerFilters = new ArrayList<>();
+    // 在B+树中查找的谓词：inner.key indexOp outer.field1，与pred的方向相反
+    private final Predicate.Op indexOp;
+
+    transient private Tuple outer;
+    // 当前外侧tuple在B+树中的匹配，null表示需要读入下一个外侧tuple
+    transient private DbFileIterator matches;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join, which must
+     *            satisfy {@link #canProbe} for the second field of p
+     * @throws IllegalArgumentException
+     *             if the predicate is not supported or child2 cannot be
+     *             looked up in a B+ tree
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if(!supports(p.getOperator())) {
+            throw new IllegalArgumentException("IndexNestedLoopJoin does not support " + p.getOperator());
+        }
+        if(!canProbe(child2, p.getField2())) {
+            throw new IllegalArgumentException("inner child is not a scan of a B+ tree keyed on the join field");
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        OpIterator inner = child2;
+        while(inner instanceof Filter) {
+            innerFilters.add(((Filter) inner).getPredicate());
+            inner = ((Filter) inner).getChildren()[0];
+        }
+        SeqScan scan = (SeqScan) inner;
+        this.index = (BTreeFile) Database.getCatalog().getDatabaseFile(scan.getTableId());
+        this.tid = scan.getTransactionId();
+        this.indexOp = flip(p.getOperator());
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if IndexNestedLoopJoin can evaluate a join predicate with
+     *         the given operator
+     */
+    public static boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                || op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    /**
+     * @return true if child is a SeqScan, optionally under Filters, of a B+
+     *         tree file whose key field is the given field
+     */
+    public static boolean canProbe(OpIterator child, int field) {
+        while(child instanceof Filter) {
+            child = ((Filter) child).getChildren()[0];
+        }
+        if(!(child instanceof SeqScan)) {
+            return false;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(((SeqScan) child).getTableId());
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == field;
+    }
+
+    private static Predicate.Op flip(Predicate.Op op) {
+        switch(op) {
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        closeMatches();
+        child1.close();
+        outer = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeMatches();
+        child1.rewind();
+        outer = null;
+    }
+
+    private void closeMatches() {
+        if(matches != null) {
+            matches.close();
+            matches = null;
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Tuples are ordered by the outer child, and the matches of
+     * one outer tuple by the key of the inner B+ tree.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while(true) {
+            if(matches != null) {
+                while(matches.hasNext()) {
+                    Tuple inner = matches.next();
+                    if(passesFilters(inner)) {
+                        return merge(outer, inner);
+                    }
+                }
+                closeMatches();
+            }
+            if(!child1.hasNext()) {
+                return null;
+            }
+            outer = child1.next();
+            matches = index.indexIterator(tid, new IndexPredicate(indexOp, outer.getField(pred.getField1())));
+            matches.open();
+        }
+    }
+
+    private boolean passesFilters(Tuple t) {
+        for(Predicate p : innerFilters) {
+            if(!p.filter(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+
+        Tuple t = new Tuple(comboTD);
+        for(int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for(int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
@@ -0,0 +1,119 @@
+package simpledb.execution;
+
+import simpledb.storage.Tuple;
+
+import java.util.Arrays;
+
+/**
+ * HashEquiJoin在join key为int时使用的build表，不创建IntField、HashMap.Node和ArrayList
+ *
+ * 加入的tuple按顺序存放在rows中，行号就是下标，相同key的行通过next串成链表，
+ * 链表头保存在开放寻址(线性探测)的slots中
+ * 每个slot的key和链表头相邻存放，查找一个key通常只访问一次slots所在的cache line
+ */
+class IntHashTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 第s个slot：slots[2s]为key，slots[2s+1]为链表头的行号+1，0表示空slot
+    // slot数是2的幂，至少是不同key数的两倍
+    private int[] slots = new int[INITIAL_CAPACITY * 4];
+    private int distinctKeys;
+    private Tuple[] rows = new Tuple[INITIAL_CAPACITY];
+    // 同一个key的下一行，-1表示链表结束
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * 与HashEquiJoin划分partition时使用的hash无关，同一个partition中的key在这里仍然分散
+     */
+    private static int hash(int key) {
+        int h = key * 0x85EBCA6B;
+        return h ^ (h >>> 16);
+    }
+
+    void add(int key, Tuple t) {
+        if(size == rows.length) {
+            int capacity = rows.length * 2;
+            rows = Arrays.copyOf(rows, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        int mask = slots.length / 2 - 1;
+        int s = hash(key) & mask;
+        while(slots[2 * s + 1] != 0 && slots[2 * s] != key) {
+            s = (s + 1) & mask;
+        }
+        rows[size] = t;
+        // 插入到链表头，链表中行的顺序与加入的顺序相反
+        next[size] = slots[2 * s + 1] - 1;
+        if(slots[2 * s + 1] == 0) {
+            slots[2 * s] = key;
+            distinctKeys++;
+        }
+        slots[2 * s + 1] = size + 1;
+        size++;
+        if(distinctKeys * 4 > slots.length) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length / 2 - 1;
+        for(int i = 0; i < old.length; i += 2) {
+            if(old[i + 1] != 0) {
+                int s = hash(old[i]) & mask;
+                while(slots[2 * s + 1] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[2 * s] = old[i];
+                slots[2 * s + 1] = old[i + 1];
+            }
+        }
+    }
+
+    /**
+     * @return key为key的第一行的行号，没有时返回-1
+     */
+    int find(int key) {
+        int mask = slots.length / 2 - 1;
+        for(int s = hash(key) & mask; slots[2 * s + 1] != 0; s = (s + 1) & mask) {
+            if(slots[2 * s] == key) {
+                return slots[2 * s + 1] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 与row的key相同的下一行的行号，没有时返回-1
+     */
+    int next(int row) {
+        return next[row];
+    }
+
+    Tuple get(int row) {
+        return rows[row];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 清空并缩回初始大小，释放对tuple的引用
+     */
+    void clear() {
+        if(rows.length > INITIAL_CAPACITY) {
+            slots = new int[INITIAL_CAPACITY * 4];
+            rows = new Tuple[INITIAL_CAPACITY];
+            next = new int[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(slots, 0);
+            Arrays.fill(rows, 0, size, null);
+        }
+        distinctKeys = 0;
+        size = 0;
+    }
+}
@@ -51,16 +51,13 @@ public class IntegerAggregator implements Aggregator {
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
 
-        Field aggreField; // 待聚合的字段，即student_name
         Field gbField; // groubBy what, 即根据学生班级分组，分组依据的字段就是 student class;
         Integer newVal; // 新的聚合结果， 即 count(all student_name)的结果
-        aggreField = tup.getField(agIndex); // 获得待被聚合的元组的待聚合字段
-
-        if(aggreField.getType() != Type.INT_TYPE) {
+        if(tup.getTupleDesc().getFieldType(agIndex) != Type.INT_TYPE) {
             throw new IllegalArgumentException("该tuple不是指定的Int_Type类型");
         }
 
-        int toAggregate = ((IntField)aggreField).getValue(); // 待聚合值，也就是答案的candidate之一
+        int toAggregate = tup.getInt(agIndex); // 待聚合值，也就是答案的candidate之一，直接读int不创建IntField
 
         if(gbIndex != Aggregator.NO_GROUPING) { // 判断是否分组
             gbField = tup.getField(gbIndex); // 如果分组，确定分组字段
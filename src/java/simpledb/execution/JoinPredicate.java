@@ -1,6 +1,7 @@
 package simpledb.execution;
 
-import simpledb.storage.Field;
+import simpledb.common.Type;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -45,6 +46,10 @@ public class JoinPredicate implements Serializable {
      */
     public boolean filter(Tuple t1, Tuple t2) {
         // some code goes here
+        if(t1.getTupleDesc().getFieldType(field1Idx) == Type.INT_TYPE) {
+            // int字段直接比较值，不创建IntField
+            return IntField.compare(t1.getInt(field1Idx), op, t2.getInt(field2Idx));
+        }
         return t1.getField(field1Idx).compare(op, t2.getField(field2Idx));
     }
     
@@ -1,6 +1,10 @@
 package simpledb.execution;
 
+import simpledb.storage.EncodedStringField;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringDictionary;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -15,6 +19,22 @@ public class Predicate implements Serializable {
     private int field;
     private Op op;
     private Field oprand;
+    // oprand是IntField时直接比较int值，不需要从tuple中取出IntField
+    private boolean intOperand;
+    private int intOprand;
+    // 字段是字典编码的字符串时，oprand在该字典中的编码，字典变了才重新查找；不在字典中时每次都查找，之后可能被加入
+    private transient volatile OperandCode operandCode;
+
+    private static final class OperandCode {
+        final StringDictionary dictionary;
+        // oprand不在字典中时为-1，不等于任何编码
+        final int code;
+
+        OperandCode(StringDictionary dictionary, int code) {
+            this.dictionary = dictionary;
+            this.code = code;
+        }
+    }
 
     /** Constants used for return codes in Field.compare
      * 枚举了一些运算符
@@ -68,6 +88,10 @@ public class Predicate implements Serializable {
         this.field = field;
         this.op = op;
         this.oprand = operand;
+        if(operand instanceof IntField) {
+            this.intOperand = true;
+            this.intOprand = ((IntField) operand).getValue();
+        }
     }
 
     /**
@@ -110,7 +134,23 @@ public class Predicate implements Serializable {
     public boolean filter(Tuple t) {
         // done
         // 利用compare承载 op，将t和oprand做比较
-        return t.getField(field).compare(op, oprand);
+        if(intOperand) {
+            return IntField.compare(t.getInt(field), op, intOprand);
+        }
+        Field f = t.getField(field);
+        if((op == Op.EQUALS || op == Op.NOT_EQUALS) && f instanceof EncodedStringField
+                && oprand instanceof StringField) {
+            // 等值比较直接比较编码，不比较字符串
+            EncodedStringField encoded = (EncodedStringField) f;
+            OperandCode oc = operandCode;
+            if(oc == null || oc.dictionary != encoded.getDictionary() || oc.code < 0) {
+                oc = new OperandCode(encoded.getDictionary(),
+                        encoded.getDictionary().lookup(((StringField) oprand).getValue()));
+                operandCode = oc;
+            }
+            return (encoded.getCode() == oc.code) == (op == Op.EQUALS);
+        }
+        return f.compare(op, oprand);
     }
 
     /**
@@ -73,6 +73,20 @@ public class SeqScan implements OpIterator {
         return this.tableAlias;
     }
 
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return this.tableid;
+    }
+
+    /**
+     * @return the transaction this scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -0,0 +1,302 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.storage.DbFile;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The SortMergeJoin operator implements a join with an EQUALS, LESS_THAN,
+ * LESS_THAN_OR_EQ, GREATER_THAN or GREATER_THAN_OR_EQ predicate by sorting
+ * both inputs on their join fields and merging them.
+ * <p>
+ * Each input is read from its child once and sorted with an external sort
+ * that keeps at most half of the memory budget in memory and spills sorted
+ * runs to temporary files. An input that is already sorted on its join field
+ * (see {@link #isSortedOn}) is not sorted again, and an already sorted outer
+ * input is streamed from its child.
+ * <p>
+ * The merge reads the sorted outer input once. For every outer tuple, the
+ * matching inner tuples form a contiguous range of the sorted inner input,
+ * and the start of that range only moves forward, so non-matching inner
+ * tuples are skipped instead of compared with every outer tuple. For the
+ * range predicates the range extends to the end of the inner input.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default memory budget for sorting both inputs, in bytes. */
+    public static final long DEFAULT_MEMORY_BUDGET = 32L << 20;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final long memoryBudget;
+    // GREATER_THAN(_OR_EQ)时以child2为外侧，谓词变为child2 < (<=) child1，两边都按升序归并
+    private final boolean swapped;
+    private final Predicate.Op op;
+    // 两边的join字段都是int时用Tuple.getInt比较，不创建Field
+    private final boolean intKeys;
+
+    // 排好序的内侧输入；外侧输入没有按join字段排好序时也排序，否则outerRun为null，直接读child
+    transient private ExternalSort innerRun;
+    transient private ExternalSort outerRun;
+    transient private Tuple outer;
+    // 当前外侧tuple可能匹配的第一个内侧tuple的位置，随外侧tuple递增
+    transient private long start;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on. Uses {@link #DEFAULT_MEMORY_BUDGET}.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor. Accepts two children to join, the predicate to join them
+     * on and the number of bytes the sorts of both children may keep in
+     * memory before they spill to disk.
+     *
+     * @throws IllegalArgumentException
+     *             if the predicate is not supported or memoryBudget is not
+     *             positive
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2, long memoryBudget) {
+        if(!supports(p.getOperator())) {
+            throw new IllegalArgumentException("SortMergeJoin does not support " + p.getOperator());
+        }
+        if(memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget must be positive");
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.swapped = p.getOperator() == Predicate.Op.GREATER_THAN
+                || p.getOperator() == Predicate.Op.GREATER_THAN_OR_EQ;
+        if(p.getOperator() == Predicate.Op.GREATER_THAN) {
+            this.op = Predicate.Op.LESS_THAN;
+        } else if(p.getOperator() == Predicate.Op.GREATER_THAN_OR_EQ) {
+            this.op = Predicate.Op.LESS_THAN_OR_EQ;
+        } else {
+            this.op = p.getOperator();
+        }
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if SortMergeJoin can evaluate a join predicate with the
+     *         given operator
+     */
+    public static boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                || op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    /**
+     * @return true if the tuples of child are known to come out in ascending
+     *         order of the given field: a scan of a B+ tree file on its key
+     *         field, an ascending OrderBy on the field, or a Filter over one
+     *         of these
+     */
+    public static boolean isSortedOn(OpIterator child, int field) {
+        if(child instanceof Filter) {
+            return isSortedOn(((Filter) child).getChildren()[0], field);
+        }
+        if(child instanceof OrderBy) {
+            return ((OrderBy) child).isASC() && ((OrderBy) child).getOrderByField() == field;
+        }
+        String tableName;
+        if(child instanceof SeqScan) {
+            tableName = ((SeqScan) child).getTableName();
+        } else if(child instanceof BTreeScan) {
+            tableName = ((BTreeScan) child).getTableName();
+        } else {
+            return false;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(tableName));
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == field;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    private OpIterator outerChild() {
+        return swapped ? child2 : child1;
+    }
+
+    private OpIterator innerChild() {
+        return swapped ? child1 : child2;
+    }
+
+    private int outerField() {
+        return swapped ? pred.getField2() : pred.getField1();
+    }
+
+    private int innerField() {
+        return swapped ? pred.getField1() : pred.getField2();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        super.open();
+        innerRun = sort(innerChild(), innerField());
+        outerRun = isSortedOn(outerChild(), outerField()) ? null : sort(outerChild(), outerField());
+        outer = null;
+        start = 0;
+    }
+
+    private ExternalSort sort(OpIterator child, int field) throws DbException, TransactionAbortedException {
+        ExternalSort sort = new ExternalSort(child.getTupleDesc(), field, isSortedOn(child, field),
+                memoryBudget / 2);
+        while(child.hasNext()) {
+            sort.add(child.next());
+        }
+        sort.finish();
+        return sort;
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        child2.close();
+        if(innerRun != null) {
+            innerRun.delete();
+            innerRun = null;
+        }
+        if(outerRun != null) {
+            outerRun.delete();
+            outerRun = null;
+        }
+        outer = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if(outerRun != null) {
+            outerRun.seek(0);
+        } else {
+            outerChild().rewind();
+        }
+        outer = null;
+        start = 0;
+    }
+
+    private Tuple nextOuter() throws DbException, TransactionAbortedException {
+        if(outerRun != null) {
+            return outerRun.hasNext() ? outerRun.next() : null;
+        }
+        return outerChild().hasNext() ? outerChild().next() : null;
+    }
+
+    /**
+     * @return 内侧tuple inner排在外侧tuple outer的所有匹配之前
+     */
+    private boolean before(Tuple inner, Tuple outer) {
+        if(intKeys) {
+            int innerKey = inner.getInt(innerField()), outerKey = outer.getInt(outerField());
+            return op == Predicate.Op.LESS_THAN ? innerKey <= outerKey : innerKey < outerKey;
+        }
+        Predicate.Op before = op == Predicate.Op.LESS_THAN ? Predicate.Op.LESS_THAN_OR_EQ : Predicate.Op.LESS_THAN;
+        return inner.getField(innerField()).compare(before, outer.getField(outerField()));
+    }
+
+    private boolean keysEqual(Tuple outer, Tuple inner) {
+        if(intKeys) {
+            return outer.getInt(outerField()) == inner.getInt(innerField());
+        }
+        return outer.getField(outerField()).equals(inner.getField(innerField()));
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Tuples are ordered by the join field of the outer input,
+     * which is child2 for GREATER_THAN and GREATER_THAN_OR_EQ and child1
+     * otherwise.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while(true) {
+            if(outer == null) {
+                outer = nextOuter();
+                if(outer == null) {
+                    return null;
+                }
+                // 跳过排在所有匹配之前的内侧tuple，外侧key递增，跳过的tuple之后也不会匹配
+                innerRun.seek(start);
+                while(innerRun.hasNext() && before(innerRun.next(), outer)) {
+                    start++;
+                }
+                innerRun.seek(start);
+            }
+            if(innerRun.hasNext()) {
+                Tuple inner = innerRun.next();
+                // 范围谓词从start开始一直匹配到最后，只有EQUALS需要比较
+                if(op != Predicate.Op.EQUALS || keysEqual(outer, inner)) {
+                    return swapped ? merge(inner, outer) : merge(outer, inner);
+                }
+            }
+            // 匹配的范围到此结束
+            outer = null;
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+
+        Tuple t = new Tuple(comboTD);
+        for(int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for(int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
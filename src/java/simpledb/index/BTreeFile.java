@@ -3,7 +3,6 @@ package simpledb.index;
 import java.io.*;
 import java.util.*;
 
-import com.sun.tools.doclets.internal.toolkit.taglets.BaseInlineTaglet;
 import simpledb.common.Database;
 import simpledb.common.Permissions;
 import simpledb.execution.IndexPredicate;
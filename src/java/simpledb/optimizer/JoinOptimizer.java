@@ -3,6 +3,9 @@ package simpledb.optimizer;
 import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFile;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
@@ -16,6 +19,26 @@ import javax.swing.tree.*;
  * logical plan.
  */
 public class JoinOptimizer {
+
+    /**
+     * The physical join operators {@link #instantiateJoin} can create for a
+     * {@link LogicalJoinNode}.
+     */
+    public enum JoinAlgorithm {
+        /** {@link Join}, a block nested-loop join. */
+        NESTED_LOOP,
+        /** {@link HashEquiJoin}, for EQUALS predicates. */
+        HASH,
+        /** {@link SortMergeJoin}, for EQUALS and range predicates. */
+        SORT_MERGE,
+        /** {@link IndexNestedLoopJoin}, when the inner table is a B+ tree
+         * keyed on the join field. */
+        INDEX_NESTED_LOOP
+    }
+
+    // 范围join的输出约占笛卡尔积的30%
+    private static final double RANGE_JOIN_SELECTIVITY = 0.3;
+
     final LogicalPlan p;
     final List<LogicalJoinNode> joins;
 
@@ -49,6 +72,25 @@ public class JoinOptimizer {
      */
     public static OpIterator instantiateJoin(LogicalJoinNode lj,
                                              OpIterator plan1, OpIterator plan2) throws ParsingException {
+        return instantiateJoin(lj, plan1, plan2, HashEquiJoin.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Same as {@link #instantiateJoin(LogicalJoinNode, OpIterator, OpIterator)},
+     * with the number of bytes a hash join or sort-merge join may keep in
+     * memory before it spills to disk.
+     * <p>
+     * The join is created with the algorithm that {@link #orderJoins} chose
+     * for lj. If no algorithm was chosen, EQUALS joins use a hash join and
+     * other joins a nested-loop join. An EQUALS join whose inputs are both
+     * already sorted on the join fields uses a sort-merge join instead of a
+     * hash join, since neither input has to be sorted. An index nested-loop
+     * join falls back to the default when plan2 is not a scan of the B+ tree
+     * (see {@link IndexNestedLoopJoin#canProbe}).
+     */
+    public static OpIterator instantiateJoin(LogicalJoinNode lj,
+                                             OpIterator plan1, OpIterator plan2, long joinMemoryBudget)
+            throws ParsingException {
 
         int t1id = 0, t2id = 0;
         OpIterator j;
@@ -73,20 +115,30 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        if (lj.p == Predicate.Op.EQUALS) {
+        JoinAlgorithm algorithm = lj.algorithm;
+        if (algorithm == JoinAlgorithm.INDEX_NESTED_LOOP && !IndexNestedLoopJoin.canProbe(plan2, t2id)) {
+            algorithm = null;
+        }
+        if (algorithm == null) {
+            algorithm = lj.p == Predicate.Op.EQUALS ? JoinAlgorithm.HASH : JoinAlgorithm.NESTED_LOOP;
+        }
+        if (algorithm == JoinAlgorithm.HASH && SortMergeJoin.isSortedOn(plan1, t1id)
+                && SortMergeJoin.isSortedOn(plan2, t2id)) {
+            algorithm = JoinAlgorithm.SORT_MERGE;
+        }
 
-            try {
-                // dynamically load HashEquiJoin -- if it doesn't exist, just
-                // fall back on regular join
-                Class<?> c = Class.forName("simpledb.execution.HashEquiJoin");
-                java.lang.reflect.Constructor<?> ct = c.getConstructors()[0];
-                j = (OpIterator) ct
-                        .newInstance(new Object[] { p, plan1, plan2 });
-            } catch (Exception e) {
+        switch (algorithm) {
+            case HASH:
+                j = new HashEquiJoin(p, plan1, plan2, joinMemoryBudget);
+                break;
+            case SORT_MERGE:
+                j = new SortMergeJoin(p, plan1, plan2, joinMemoryBudget);
+                break;
+            case INDEX_NESTED_LOOP:
+                j = new IndexNestedLoopJoin(p, plan1, plan2);
+                break;
+            default:
                 j = new Join(p, plan1, plan2);
-            }
-        } else {
-            j = new Join(p, plan1, plan2);
         }
 
         return j;
@@ -125,6 +177,15 @@ public class JoinOptimizer {
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
             double cost1, double cost2) {
+        return estimateJoinCost(j, card1, card2, cost1, cost2, true);
+    }
+
+    /**
+     * @param innerIsTable 右侧是j.t2Alias对应的table本身，而不是之前join的结果，
+     *                     只有这时才能在它的B+树中查找
+     */
+    private double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean innerIsTable) {
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 3.
@@ -142,10 +203,120 @@ public class JoinOptimizer {
 //            int blockCard = fullNum + left; // 得到左表被分为多少个缓冲区
 //            double cost = cost1 + blockCard * cost2 + card1 * card2; // 总代价 = 扫描左表 + 左表扫描右表 + 左右表join
 //            return cost;
-            return cost1 + card1 * cost2 + card1 * card2;
+            switch (chooseJoinAlgorithm(j, card1, card2, cost1, cost2, innerIsTable)) {
+                case SORT_MERGE:
+                    return estimateSortMergeJoinCost(card1, card2, cost1, cost2);
+                case INDEX_NESTED_LOOP:
+                    return estimateIndexNestedLoopJoinCost(card1, cost1, estimateIndexLookupCost(j, cost2));
+                case HASH:
+                    return estimateHashJoinCost(card1, card2, cost1, cost2);
+                default:
+                    return estimateNestedLoopJoinCost(card1, card2, cost1, cost2);
+            }
         }
     }
 
+    /**
+     * Choose the join algorithm for a join, given the same estimates as
+     * {@link #estimateJoinCost}. EQUALS joins use an index nested-loop join
+     * when the right-hand table is a B+ tree keyed on the join field and
+     * looking up every left-hand tuple in it is cheaper than building a hash
+     * table from a full scan of it, that is, when the left-hand side is
+     * small; otherwise they use a hash join. Range joins between tables use the cheaper of a
+     * nested-loop join and a sort-merge join; other joins use a nested-loop
+     * join.
+     */
+    public JoinAlgorithm chooseJoinAlgorithm(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2) {
+        return chooseJoinAlgorithm(j, card1, card2, cost1, cost2, true);
+    }
+
+    private JoinAlgorithm chooseJoinAlgorithm(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean innerIsTable) {
+        if (j.p == Predicate.Op.EQUALS) {
+            if (innerIsTable && !(j instanceof LogicalSubplanJoinNode)) {
+                double lookupCost = estimateIndexLookupCost(j, cost2);
+                if (lookupCost >= 0 && estimateIndexNestedLoopJoinCost(card1, cost1, lookupCost)
+                        < estimateHashJoinCost(card1, card2, cost1, cost2)) {
+                    return JoinAlgorithm.INDEX_NESTED_LOOP;
+                }
+            }
+            return JoinAlgorithm.HASH;
+        }
+        if (!(j instanceof LogicalSubplanJoinNode) && SortMergeJoin.supports(j.p)
+                && estimateSortMergeJoinCost(card1, card2, cost1, cost2)
+                < estimateNestedLoopJoinCost(card1, card2, cost1, cost2)) {
+            return JoinAlgorithm.SORT_MERGE;
+        }
+        return JoinAlgorithm.NESTED_LOOP;
+    }
+
+    private static double estimateNestedLoopJoinCost(int card1, int card2, double cost1, double cost2) {
+        return cost1 + (double) card1 * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * 两边各扫描一次并排序，归并时每个tuple读一次，再加上输出的每一行
+     * 排序按n*log2(n)次比较计算，没有计入溢出到磁盘的IO：cost1可能是之前join的代价，不代表输入的大小
+     */
+    private static double estimateSortMergeJoinCost(int card1, int card2, double cost1, double cost2) {
+        return cost1 + cost2 + sortCost(card1) + sortCost(card2) + card1 + card2
+                + RANGE_JOIN_SELECTIVITY * card1 * card2;
+    }
+
+    /**
+     * 两边各扫描一次，每个tuple处理一次
+     */
+    private static double estimateHashJoinCost(int card1, int card2, double cost1, double cost2) {
+        return cost1 + cost2 + card1 + card2;
+    }
+
+    /**
+     * 扫描左侧一次，每个左侧tuple在B+树中查找一次，按每次查找输出一行计算
+     */
+    private static double estimateIndexNestedLoopJoinCost(int card1, double cost1, double lookupCost) {
+        return cost1 + card1 * (lookupCost + 1);
+    }
+
+    /**
+     * @return 在j.t2Alias的table中按f2查找一次的代价；table不是按f2建的B+树时返回-1
+     * 一次查找读取从根到叶子每层一页，按内部节点半满估算层数，每页的代价为cost2 / 页数
+     */
+    private double estimateIndexLookupCost(LogicalJoinNode j, double cost2) {
+        Integer tableId = j.t2Alias == null ? null : p.getTableId(j.t2Alias);
+        if (tableId == null) {
+            return -1;
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(file instanceof BTreeFile)) {
+            return -1;
+        }
+        BTreeFile btree = (BTreeFile) file;
+        TupleDesc td = btree.getTupleDesc();
+        int field;
+        try {
+            field = td.fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return -1;
+        }
+        if (field != btree.keyField()) {
+            return -1;
+        }
+        int pages = Math.max(1, btree.numPages());
+        // 内部节点的每一项是一个key和4字节的子节点指针
+        int fanout = Math.max(2, BufferPool.getPageSize() / (td.getFieldType(field).getLen() + 4) / 2);
+        // 叶子一层，加上内部节点的层数
+        int levels = 1;
+        for (long n = 1; n < pages; n *= fanout) {
+            levels++;
+        }
+        return levels * cost2 / pages;
+    }
+
+    private static double sortCost(int card) {
+        return card <= 1 ? 0 : card * (Math.log(card) / Math.log(2));
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
@@ -210,7 +381,7 @@ public class JoinOptimizer {
             case LESS_THAN:
 
             case LESS_THAN_OR_EQ:
-                card = (int) (card1 * card2 * 0.3); // 范围扫描 输出结果和输入成正比，一般占笛卡尔乘积30%
+                card = (int) (card1 * card2 * RANGE_JOIN_SELECTIVITY); // 范围扫描 输出结果和输入成正比，一般占笛卡尔乘积30%
                 break;
 
             default:
@@ -385,6 +556,8 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        // j.t2是table本身：news为空时两边都是table，否则t2不能已经在prevBest中
+        boolean t2IsTable = true;
 
         // 移除一个join后就为null了，说明joinSet中只有一个join
         if (news.isEmpty()) { // base case -- both are base relations
@@ -419,6 +592,7 @@ public class JoinOptimizer {
             // doesJoin（List<LogicalJoinNode> joinlist, String table） : 当table在joinList中时，返回true
             boolean leftInPreBest = doesJoin(prevBest, table1Alias);
             boolean rightInPrevBest = doesJoin(prevBest, table2Alias);
+            t2IsTable = !rightInPrevBest;
             if (leftInPreBest || rightInPrevBest) { // j.t1 is in prevBest  即t1在当prevBest中
                 t1cost = prevBestCost;
                 t1card = bestCard;
@@ -438,14 +612,17 @@ public class JoinOptimizer {
         }
 
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost, t2IsTable);
+        JoinAlgorithm algorithm = chooseJoinAlgorithm(j, t1card, t2card, t1cost, t2cost, t2IsTable);
 
+        // 交换后右侧是t1，news不为空时它的代价和基数是prevBest的，不能在t1的B+树中查找
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost, news.isEmpty());
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
             cost1 = cost2;
+            algorithm = chooseJoinAlgorithm(j2, t2card, t1card, t2cost, t1cost, news.isEmpty());
             tmp = rightPkey;
             rightPkey = leftPkey;
             leftPkey = tmp;
@@ -459,7 +636,8 @@ public class JoinOptimizer {
                 rightPkey, stats);
         cc.cost = cost1;
         cc.plan = new ArrayList<>(prevBest);
-        cc.plan.add(j); // prevbest is left -- add new join to end
+        // j可能是joinSet中的节点，记录算法时使用副本
+        cc.plan.add(j.withAlgorithm(algorithm)); // prevbest is left -- add new join to end
         return cc;
     }
 
@@ -25,6 +25,10 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The algorithm chosen by the optimizer, or null to let
+     * {@link JoinOptimizer#instantiateJoin} pick one from the predicate. */
+    public JoinOptimizer.JoinAlgorithm algorithm;
+
     public LogicalJoinNode() {
     }
 
@@ -64,6 +68,13 @@ public class LogicalJoinNode {
         return new LogicalJoinNode(t2Alias,t1Alias,f2PureName,f1PureName, newp);
     }
     
+    /** Return a copy of this join that is executed with the given algorithm. */
+    public LogicalJoinNode withAlgorithm(JoinOptimizer.JoinAlgorithm algorithm) {
+        LogicalJoinNode j = new LogicalJoinNode(t1Alias, t2Alias, f1PureName, f2PureName, p);
+        j.algorithm = algorithm;
+        return j;
+    }
+
     @Override public boolean equals(Object o) {
         if (!(o instanceof LogicalJoinNode)) return false;
         LogicalJoinNode j2 =(LogicalJoinNode)o;
@@ -41,6 +41,7 @@ public class LogicalPlan {
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
     private String query;
+    private long joinMemoryBudget = HashEquiJoin.DEFAULT_MEMORY_BUDGET;
 //    private Query owner;
 
     /** Constructor -- generate an empty logical plan */
@@ -65,6 +66,21 @@ public class LogicalPlan {
         this.query = query;
     }
       
+    /** Set the number of bytes each hash join or sort-merge join of this
+        plan may keep in memory before it spills to disk.
+        Defaults to {@link HashEquiJoin#DEFAULT_MEMORY_BUDGET}.
+    */
+    public void setJoinMemoryBudget(long joinMemoryBudget) {
+        if (joinMemoryBudget <= 0) {
+            throw new IllegalArgumentException("joinMemoryBudget must be positive");
+        }
+        this.joinMemoryBudget = joinMemoryBudget;
+    }
+
+    public long getJoinMemoryBudget() {
+        return joinMemoryBudget;
+    }
+
     /** Get the query text associated with this plan via {@link #setQuery}.
      */
     public String getQuery() {
@@ -383,7 +399,7 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
 
             OpIterator j;
-            j = JoinOptimizer.instantiateJoin(lj, plan1, plan2);
+            j = JoinOptimizer.instantiateJoin(lj, plan1, plan2, joinMemoryBudget);
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -5,6 +5,7 @@ import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.execution.Predicate;
 import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
 import simpledb.storage.*;
 import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionAbortedException;
@@ -74,7 +75,7 @@ public class TableStats {
     private int ioCostPerPage;
     private TupleDesc td;
     private int ntups; // tups数量
-    private HeapFile table;
+    private DbFile table; // HeapFile或BTreeFile
     private HashMap<String, Integer[]> attrs; // key为每一列字段名，int[]{最小值，最大值}
     private HashMap<String, Object> name2hist;
 
@@ -99,7 +100,7 @@ public class TableStats {
         // some code goes here
         this.tableId = tableid;
         this.ioCostPerPage = ioCostPerPage;
-        this.table = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+        this.table = Database.getCatalog().getDatabaseFile(tableid);
         this.td = table.getTupleDesc();
         this.attrs = new HashMap<>();
         this.name2hist = new HashMap<>();
@@ -203,7 +204,14 @@ public class TableStats {
     //返回预估的读取table所需时间，不考虑页不完整，不考虑缓存
     public double estimateScanCost() {
         // some code goes here
-        return table.numPages() * ioCostPerPage; // 多少页就多少时间
+        return numPages() * ioCostPerPage; // 多少页就多少时间
+    }
+
+    private int numPages() {
+        if(table instanceof BTreeFile) {
+            return ((BTreeFile) table).numPages();
+        }
+        return ((HeapFile) table).numPages();
     }
 
     /**
@@ -2,16 +2,31 @@ package simpledb.storage;
 
 
 import simpledb.common.Database;
+import simpledb.common.DeadlockPolicy;
 import simpledb.common.LockManager;
 import simpledb.common.Permissions;
 import simpledb.common.DbException;
+import simpledb.common.LatencyHistogram;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 
 /**
@@ -31,37 +46,101 @@ public class BufferPool {
 
     private static int pageSize = DEFAULT_PAGE_SIZE;
 
-    private PageLruCache LRUPagesPool;
-
-
-//    private final Page[] buffer;
-
-    private HashMap<PageId, Page> pid2pages;
+    // 页表，置换算法由构造时的PageReplacementPolicy决定
+    private PageCache pagesPool;
 
     private int PAGES_NUM;
 
     private LockManager lockManager;
+
+    // 所有BufferPool共用的预读线程，队列满时直接放弃预读
+    private static final int PREFETCH_THREADS = 2;
+    private static final int PREFETCH_QUEUE_SIZE = 256;
+    private static final ThreadPoolExecutor PREFETCHER = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE), r -> {
+                Thread thread = new Thread(r, "page-prefetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // 正在后台读入的page，getPage未命中时等待它完成，而不是重复读一次
+    private final ConcurrentHashMap<PageId, FutureTask<Void>> prefetching = new ConcurrentHashMap<>();
+
+    // 每个事务bulkLoad过的HeapFile，事务结束时通知它们提交或删除load的page
+    private final ConcurrentHashMap<TransactionId, Set<HeapFile>> bulkLoads = new ConcurrentHashMap<>();
+
+    // ===================统计信息，见getStats()=====================
+    // Key: tableId， Value: 该table的page命中/未命中次数
+    private final ConcurrentHashMap<Integer, TableCounters> tableCounters = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LatencyHistogram flushTime = new LatencyHistogram();
+
+    private static class TableCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    /** Name under which {@link #registerMBean()} publishes the statistics. */
+    public static final String MBEAN_NAME = "simpledb:type=BufferPool";
     
     /** Default number of pages passed to the constructor. This is used by
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
-    private final long SLEEP_INTERVAL;
-
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, DeadlockPolicy.DETECTION);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and handles
+     * deadlocks between transactions with the given policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param deadlockPolicy how lock conflicts that could deadlock are resolved.
+     */
+    public BufferPool(int numPages, DeadlockPolicy deadlockPolicy) {
+        this(numPages, deadlockPolicy, PageReplacementPolicy.CLOCK);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts pages
+     * with the given replacement policy when it is full.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param replacementPolicy which page to evict when the buffer pool is full.
+     */
+    public BufferPool(int numPages, PageReplacementPolicy replacementPolicy) {
+        this(numPages, DeadlockPolicy.DETECTION, replacementPolicy);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param deadlockPolicy how lock conflicts that could deadlock are resolved.
+     * @param replacementPolicy which page to evict when the buffer pool is full.
+     */
+    public BufferPool(int numPages, DeadlockPolicy deadlockPolicy, PageReplacementPolicy replacementPolicy) {
         // some code goes here
 //        buffer = new Page[numPages];
         PAGES_NUM = numPages;
-        pid2pages = new HashMap<>(numPages);
-        LRUPagesPool = new PageLruCache(PAGES_NUM);
-        lockManager = new LockManager();
-        SLEEP_INTERVAL = 500; //睡眠时间太短会造成查询死锁频率过高
+        switch (replacementPolicy) {
+            case TWO_Q:
+                pagesPool = new Page2QCache(PAGES_NUM);
+                break;
+            case CLOCK:
+            default:
+                pagesPool = new PageClockCache(PAGES_NUM);
+        }
+        lockManager = new LockManager(deadlockPolicy);
     }
     
     public static int getPageSize() {
@@ -109,39 +188,106 @@ public class BufferPool {
 //        pid2pages.put(pid,page);
 //        return page;
 
-        boolean lock = (perm == Permissions.READ_ONLY) ? lockManager.grantSLock(tid, pid)
-                : lockManager.grantXLock(tid, pid);
-
-        // 自旋等待资源，一直到申请到锁
-        while (!lock) {
-            if(lockManager.deadLockOccurred(tid, pid)) {
-                throw new TransactionAbortedException();
+        // 拿不到锁时阻塞在LockManager的等待队列中，持有者释放锁后立即被唤醒
+        // 如果被选为死锁的牺牲者，抛出TransactionAbortedException
+        lockManager.acquireLock(tid, pid, perm);
+
+        TableCounters counters = tableCounters.computeIfAbsent(pid.getTableId(), k -> new TableCounters());
+        Page page = pagesPool.get(pid);
+        if(page == null) {
+            // 预读已经在读这个page了，等它读完
+            FutureTask<Void> pending = prefetching.get(pid);
+            if(pending != null) {
+                try {
+                    pending.get();
+                } catch (ExecutionException e) {
+                    // 预读失败，下面自己读
+                }
+                page = pagesPool.get(pid);
             }
-            Thread.sleep(SLEEP_INTERVAL);
-
-            lock = (perm == Permissions.READ_ONLY) ? lockManager.grantSLock(tid, pid)
-                    : lockManager.grantXLock(tid, pid);
         }
-
-        HeapPage heapPage = (HeapPage) LRUPagesPool.get(pid);
-        if(heapPage != null) {
-            return  heapPage; // 直接根据pid命中要查询的page
+        if(page != null) {
+            counters.hits.increment();
+            return page; // 直接根据pid命中要查询的page
         }
 
         // 未命中，应该访问磁盘并将其缓存下来
-        HeapFile table = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
-        HeapPage newPage = (HeapPage) table.readPage(pid);
-        Page removedPage = LRUPagesPool.put(pid, newPage);
+        // NO STEAL策略下只会淘汰干净的page，被淘汰的page不需要写回磁盘
+        counters.misses.increment();
+        DbFile table = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        Page newPage = table.readPage(pid);
+        bytesRead.add(pageSize);
+        return pagesPool.putIfAbsent(pid, newPage); // 其他线程可能同时读入了同一个page
+    }
+
+    /**
+     * Asynchronously reads the specified page into the buffer pool if it is
+     * not cached yet, so that a later {@link #getPage} finds it there. No lock
+     * is acquired: only a clean copy from disk is installed and a page that
+     * is already cached always wins. Flushing or discarding the page waits
+     * for a pending prefetch of it, so a copy read before the page was
+     * written back is never installed afterwards. Best effort; the request
+     * is dropped if the prefetch queue is full or the buffer pool has no
+     * clean page to evict.
+     *
+     * @param pid the ID of the page that is likely to be requested soon
+     */
+    public void prefetchPage(PageId pid) {
+        if(pagesPool.isCached(pid) || prefetching.containsKey(pid)) {
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                if(!pagesPool.isCached(pid)) {
+                    DbFile table = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                    pagesPool.putIfAbsent(pid, table.readPage(pid));
+                    bytesRead.add(pageSize);
+                    prefetches.increment();
+                }
+            } catch (DbException e) {
+                // 缓存里全是脏页，放弃预读
+            } finally {
+                prefetching.remove(pid);
+            }
+            return null;
+        });
+        if(prefetching.putIfAbsent(pid, task) != null) {
+            return; // 其他线程同时提交了同一个page
+        }
+        try {
+            PREFETCHER.execute(task);
+        } catch (RejectedExecutionException e) {
+            prefetching.remove(pid);
+        }
+    }
 
-        // 将要移除的最老的page，flush到磁盘
-        if(removedPage != null) {
+    /**
+     * 等待pid上正在进行的预读结束，还没有开始的预读直接在当前线程执行
+     * 预读不加锁，它读到的数据可能早于一次写回；如果它在写回、淘汰之后才把page放入缓存，
+     * 缓存中就是丢失了已提交修改的旧数据。所以写回或丢弃page之前先等预读完成：
+     * 此时page还在缓存中，预读放不进去；之后开始的预读检查到page已缓存，或者读到写回后的数据
+     */
+    private void awaitPrefetch(PageId pid) {
+        FutureTask<Void> pending = prefetching.get(pid);
+        if(pending == null) {
+            return;
+        }
+        pending.run(); // 已经开始或已经结束的任务不会重复执行
+        boolean interrupted = false;
+        while(true) {
             try {
-                flushPage(removedPage.getId());
-            } catch (IOException e) {
-                e.printStackTrace();
+                pending.get();
+                break;
+            } catch (InterruptedException e) {
+                // 必须等到预读结束，中断推迟到之后处理
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break; // 预读失败，没有放入缓存
             }
         }
-        return newPage;
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -180,7 +326,7 @@ public class BufferPool {
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return lockManager.getLockState(tid, p) != null;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -193,12 +339,33 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        lockManager.releaseTransactionLocks(tid);
+        // 先写回或撤销，再释放锁，否则其他事务可能在此期间读到未提交的page
         if(commit) {
             flushPages(tid);
         } else {
             revertTransactionAction(tid);
         }
+        Set<HeapFile> loaded = bulkLoads.remove(tid);
+        if(loaded != null) {
+            for(HeapFile file : loaded) {
+                file.completeBulkLoad(tid, commit);
+            }
+        }
+        lockManager.releaseTransactionLocks(tid);
+    }
+
+    /**
+     * 给HeapFile.bulkLoad写入文件末尾的新page加写锁，tid结束时file才会提交或删除这些page
+     * 新page不经过缓存，也不会被其他事务锁住，加锁不会等待
+     */
+    void lockBulkLoadedPage(TransactionId tid, HeapFile file, PageId pid) throws TransactionAbortedException {
+        try {
+            lockManager.acquireLock(tid, pid, Permissions.READ_WRITE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionAbortedException();
+        }
+        bulkLoads.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(file);
     }
 
     /**
@@ -206,12 +373,19 @@ public class BufferPool {
      * @param tid
      */
     public void revertTransactionAction(TransactionId tid) {
-        Iterator<Page> iterator = LRUPagesPool.iterator();
-        while (iterator.hasNext()) {
-            Page p = iterator.next();
-            if(p.isDirty() != null && p.isDirty().equals(tid)) {
-                // 还没有提交，从磁盘中获得源数据，替换到lruPool中
-                LRUPagesPool.reCachePage(p.getId()); // 回滚事务，撤销其改变
+        // 事务修改过的page一定持有写锁，只需要检查tid加过锁的page，不用扫描整个缓存
+        for(PageId pid : lockManager.getAllLockedPagesById(tid)) {
+            Page p = pagesPool.get(pid);
+            if(p != null && p.isDirty() != null && p.isDirty().equals(tid)) {
+                // 还没有提交，磁盘中的page还是干净的，从磁盘中获得源数据替换掉dirty page，撤销其改变
+                DbFile table = Database.getCatalog().getDatabaseFile(p.getId().getTableId());
+                try {
+                    pagesPool.put(p.getId(), table.readPage(p.getId()));
+                    bytesRead.add(pageSize);
+                } catch (DbException e) {
+                    // 替换已缓存的page不需要淘汰，不会发生
+                    e.printStackTrace();
+                }
             }
         }
     }
@@ -235,10 +409,11 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
-        HeapFile heapFile = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
-        List<Page> pages = heapFile.insertTuple(tid, t);
+        DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pages = table.insertTuple(tid, t);
         for(Page page : pages) {
             page.markDirty(true, tid);
+            pagesPool.put(page.getId(), page); // 脏页可能已经被淘汰了，重新放回缓存
         }
     }
 
@@ -260,12 +435,12 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
         RecordId tRecordId = t.getRecordId();
-        HeapPageId tPageId = (HeapPageId) tRecordId.getPageId();
-        int tableId = tPageId.getTableId();
-        HeapFile hFile = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
-        ArrayList<Page> pages = hFile.deleteTuple(tid, t);
+        int tableId = tRecordId.getPageId().getTableId();
+        DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pages = table.deleteTuple(tid, t);
         for(Page page : pages) {
             page.markDirty(true, tid);
+            pagesPool.put(page.getId(), page); // 脏页可能已经被淘汰了，重新放回缓存
         }
     }
 
@@ -277,7 +452,7 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        Iterator<Page> it = LRUPagesPool.iterator();
+        Iterator<Page> it = pagesPool.iterator();
         while (it.hasNext()) {
             Page p = it.next();
             if(p.isDirty() != null) {
@@ -298,6 +473,8 @@ public class BufferPool {
     public synchronized void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
+        awaitPrefetch(pid);
+        pagesPool.remove(pid);
     }
 
     /**
@@ -305,9 +482,16 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized void flushPage(PageId pid) throws IOException {
-        HeapPage dirtyPage = (HeapPage) pid2pages.get(pid);
-        HeapFile table = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+        Page dirtyPage = pagesPool.get(pid);
+        if(dirtyPage == null || dirtyPage.isDirty() == null) {
+            return;
+        }
+        awaitPrefetch(pid);
+        DbFile table = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        long start = System.nanoTime();
         table.writePage(dirtyPage);
+        flushTime.record(System.nanoTime() - start);
+        bytesWritten.add(pageSize);
         dirtyPage.markDirty(false,null);
     }
 
@@ -315,13 +499,13 @@ public class BufferPool {
      * 将tid相关的dirty pages全部刷新到磁盘
      */
 
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        Iterator<Page> iterator = LRUPagesPool.iterator();
-        while (iterator.hasNext()) {
-            Page page = iterator.next();
-            if(page.isDirty() != null && page.isDirty().equals(tid)) { // isDirty()返回使该page dirty的tid, 如果clean, 返回null
+        // 事务修改过的page一定持有写锁，只需要检查tid加过锁的page，不用扫描整个缓存
+        for(PageId pid : lockManager.getAllLockedPagesById(tid)) {
+            Page page = pagesPool.get(pid);
+            if(page != null && page.isDirty() != null && page.isDirty().equals(tid)) { // isDirty()返回使该page dirty的tid, 如果clean, 返回null
                 flushPage(page.getId());
                 if(page.isDirty() == null) {
                     page.setBeforeImage();
@@ -331,10 +515,96 @@ public class BufferPool {
 
     }
 
+    /**
+     * Returns a snapshot of the statistics gathered since this buffer pool
+     * was created: page hits and misses per table, evictions, dirty page
+     * flushes, bytes read and written, and time spent waiting for locks.
+     */
+    public BufferPoolStats getStats() {
+        Map<Integer, Long> hits = new HashMap<>();
+        Map<Integer, Long> misses = new HashMap<>();
+        for(Map.Entry<Integer, TableCounters> entry : tableCounters.entrySet()) {
+            hits.put(entry.getKey(), entry.getValue().hits.sum());
+            misses.put(entry.getKey(), entry.getValue().misses.sum());
+        }
+        return new BufferPoolStats(PAGES_NUM, pagesPool.size(), hits, misses, pagesPool.getEvictions(),
+                bytesRead.sum(), bytesWritten.sum(), prefetches.sum(),
+                flushTime.snapshot(), lockManager.getLockWaitHistogram());
+    }
+
+    /**
+     * Publishes the statistics of this buffer pool to the platform MBean
+     * server under {@link #MBEAN_NAME}, replacing the buffer pool registered
+     * there before (e.g. by an earlier {@link Database#resetBufferPool}).
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MBEAN_NAME);
+        if(server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new BufferPoolMXBean() {
+            @Override
+            public int getCapacity() {
+                return PAGES_NUM;
+            }
+
+            @Override
+            public int getCachedPages() {
+                return pagesPool.size();
+            }
+
+            @Override
+            public long getHits() {
+                return getStats().getHits();
+            }
+
+            @Override
+            public long getMisses() {
+                return getStats().getMisses();
+            }
+
+            @Override
+            public double getHitRatio() {
+                return getStats().getHitRatio();
+            }
+
+            @Override
+            public long getEvictions() {
+                return pagesPool.getEvictions();
+            }
+
+            @Override
+            public long getFlushes() {
+                return flushTime.getCount();
+            }
+
+            @Override
+            public long getBytesRead() {
+                return bytesRead.sum();
+            }
+
+            @Override
+            public long getBytesWritten() {
+                return bytesWritten.sum();
+            }
+
+            @Override
+            public long getLockWaits() {
+                return lockManager.getLockWaitHistogram().getCount();
+            }
+
+            @Override
+            public long getLockWaitMillis() {
+                return lockManager.getLockWaitHistogram().getTotalNanos() / 1_000_000;
+            }
+        }, name);
+    }
+
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
-     * 在LRU策略中已经实现
+     * 在PageClockCache的CLOCK策略中已经实现
      */
     @Deprecated
     private synchronized  void evictPage() throws DbException {
@@ -0,0 +1,31 @@
+package simpledb.storage;
+
+/**
+ * JMX view of the BufferPool statistics, registered by
+ * {@link BufferPool#registerMBean()}. See {@link BufferPoolStats} for the
+ * meaning of each attribute.
+ */
+public interface BufferPoolMXBean {
+
+    int getCapacity();
+
+    int getCachedPages();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getFlushes();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getLockWaits();
+
+    long getLockWaitMillis();
+}
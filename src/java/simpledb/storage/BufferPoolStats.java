@@ -0,0 +1,177 @@
+package simpledb.storage;
+
+import simpledb.common.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BufferPool在某一时刻的统计信息快照，由BufferPool.getStats()创建，之后不会再改变
+ * 所有计数都是从BufferPool创建开始累计的，两次快照相减即为这段时间内的增量
+ */
+public class BufferPoolStats {
+
+    private final int capacity;
+    private final int cachedPages;
+
+    // Key: tableId， Value: 该table的page命中/未命中次数
+    private final Map<Integer, Long> hitsByTable;
+    private final Map<Integer, Long> missesByTable;
+
+    private final long evictions;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long prefetches;
+
+    // 脏页写回磁盘的耗时，次数即为写回的page数
+    private final LatencyHistogram flushTime;
+
+    // 加锁时需要等待的请求的等待时间，次数即为等待次数
+    private final LatencyHistogram lockWaitTime;
+
+    BufferPoolStats(int capacity, int cachedPages, Map<Integer, Long> hitsByTable, Map<Integer, Long> missesByTable,
+                    long evictions, long bytesRead, long bytesWritten, long prefetches,
+                    LatencyHistogram flushTime, LatencyHistogram lockWaitTime) {
+        this.capacity = capacity;
+        this.cachedPages = cachedPages;
+        this.hitsByTable = Collections.unmodifiableMap(new HashMap<>(hitsByTable));
+        this.missesByTable = Collections.unmodifiableMap(new HashMap<>(missesByTable));
+        this.evictions = evictions;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.prefetches = prefetches;
+        this.flushTime = flushTime;
+        this.lockWaitTime = lockWaitTime;
+    }
+
+    /**
+     *
+     * @return BufferPool最多缓存的page数量
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     *
+     * @return 当前缓存的page数量
+     */
+    public int getCachedPages() {
+        return cachedPages;
+    }
+
+    public long getHits() {
+        return sum(hitsByTable);
+    }
+
+    public long getMisses() {
+        return sum(missesByTable);
+    }
+
+    /**
+     *
+     * @return 命中率，没有访问过任何page时为0
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getHits(int tableId) {
+        return hitsByTable.getOrDefault(tableId, 0L);
+    }
+
+    public long getMisses(int tableId) {
+        return missesByTable.getOrDefault(tableId, 0L);
+    }
+
+    /**
+     *
+     * @return Key: tableId， Value: 命中次数
+     */
+    public Map<Integer, Long> getHitsByTable() {
+        return hitsByTable;
+    }
+
+    /**
+     *
+     * @return Key: tableId， Value: 未命中次数
+     */
+    public Map<Integer, Long> getMissesByTable() {
+        return missesByTable;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     *
+     * @return 写回磁盘的脏页数量
+     */
+    public long getFlushes() {
+        return flushTime.getCount();
+    }
+
+    public LatencyHistogram getFlushTime() {
+        return flushTime;
+    }
+
+    /**
+     *
+     * @return BufferPool从磁盘读入的字节数
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     *
+     * @return BufferPool写回磁盘的字节数
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     *
+     * @return 后台预读读入的page数量，之后对这些page的getPage算作命中
+     */
+    public long getPrefetches() {
+        return prefetches;
+    }
+
+    /**
+     *
+     * @return 拿不到锁需要等待的次数
+     */
+    public long getLockWaits() {
+        return lockWaitTime.getCount();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitTime.getTotalNanos();
+    }
+
+    public LatencyHistogram getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    private static long sum(Map<Integer, Long> counts) {
+        long total = 0;
+        for(long count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pages=%d/%d hits=%d misses=%d hitRatio=%.2f%% evictions=%d%n"
+                        + "bytesRead=%d bytesWritten=%d prefetches=%d%nflush: %s%nlockWait: %s",
+                cachedPages, capacity, getHits(), getMisses(), getHitRatio() * 100, evictions,
+                bytesRead, bytesWritten, prefetches, flushTime, lockWaitTime);
+    }
+}
@@ -1,4 +0,0 @@
-package simpledb.storage;
-
-public class CacheException extends Throwable {
-}
@@ -0,0 +1,235 @@
+package simpledb.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按页压缩存储的文件，HeapFile使用PageCodec时通过它读写page
+ *
+ * 每个page压缩后存放在数据文件中的一段extent里，extent按EXTENT_ALIGN对齐分配
+ * page号到extent的映射(page translation table)保存在数据文件旁边的.ptt文件中，
+ * 第i项是page i的extent：偏移(long)、压缩后长度(int)、extent容量(int)，长度为0表示page还没有写过
+ * 压缩后长度等于page大小表示page不可压缩，按原样保存
+ *
+ * page重写时压缩后的长度不超过原extent就原地覆盖，否则换一个extent，原extent进入空闲列表
+ * 空闲列表只在内存中，打开文件时根据映射表中extent之间的空隙重建
+ * 读page时持有读锁直到数据读完，写page时持有写锁，读不会看到写了一半的extent，也不会读到已经被别的page复用的extent
+ */
+class CompressedPageFile implements Closeable {
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int EXTENT_ALIGN = 256;
+
+    private final PageCodec codec;
+    private final int pageSize;
+    private final FileChannel data;
+    private final FileChannel table;
+
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+    private int numPages;
+    // 数据文件中已分配空间的末尾
+    private long end;
+    // Key: 容量，Value: 该容量的空闲extent偏移
+    private final TreeMap<Integer, ArrayDeque<Long>> freeExtents = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    CompressedPageFile(File f, PageCodec codec, int pageSize) throws IOException {
+        this.codec = codec;
+        this.pageSize = pageSize;
+        this.data = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.table = FileChannel.open(getTableFile(f).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadTable();
+    }
+
+    /**
+     * @return 保存page translation table的文件
+     */
+    static File getTableFile(File f) {
+        return new File(f.getPath() + ".ptt");
+    }
+
+    /**
+     * @return 文件f中的page数，不需要打开文件
+     */
+    static int countPages(File f) {
+        return (int) (getTableFile(f).length() / ENTRY_SIZE);
+    }
+
+    private void loadTable() throws IOException {
+        numPages = (int) (table.size() / ENTRY_SIZE);
+        offsets = new long[Math.max(16, numPages)];
+        lengths = new int[offsets.length];
+        capacities = new int[offsets.length];
+        ByteBuffer buf = ByteBuffer.allocate(numPages * ENTRY_SIZE);
+        readFully(table, buf, 0);
+        buf.flip();
+        TreeMap<Long, Integer> used = new TreeMap<>();
+        for(int i = 0; i < numPages; i++) {
+            offsets[i] = buf.getLong();
+            lengths[i] = buf.getInt();
+            capacities[i] = buf.getInt();
+            if(capacities[i] > 0) {
+                used.put(offsets[i], capacities[i]);
+            }
+        }
+        // extent之间的空隙就是之前释放的空间
+        long pos = 0;
+        for(Map.Entry<Long, Integer> extent : used.entrySet()) {
+            if(extent.getKey() > pos) {
+                release(pos, (int) (extent.getKey() - pos));
+            }
+            pos = Math.max(pos, extent.getKey() + extent.getValue());
+        }
+        end = pos;
+    }
+
+    int numPages() {
+        lock.readLock().lock();
+        try {
+            return numPages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 读出page并解压到page中，还没有写过的page读出全0
+     */
+    void read(int pgNo, byte[] page) throws IOException {
+        byte[] compressed;
+        lock.readLock().lock();
+        try {
+            if(pgNo >= numPages || lengths[pgNo] == 0) {
+                Arrays.fill(page, (byte) 0);
+                return;
+            }
+            if(lengths[pgNo] == pageSize) {
+                readFully(data, ByteBuffer.wrap(page), offsets[pgNo]);
+                return;
+            }
+            compressed = new byte[lengths[pgNo]];
+            readFully(data, ByteBuffer.wrap(compressed), offsets[pgNo]);
+        } finally {
+            lock.readLock().unlock();
+        }
+        codec.decompress(compressed, compressed.length, page);
+    }
+
+    /**
+     * 压缩并写入page，必要时为它分配新的extent
+     */
+    void write(int pgNo, byte[] page) throws IOException {
+        byte[] compressed = codec.compress(page);
+        if(compressed.length >= pageSize) {
+            compressed = page;
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(pgNo + 1);
+            if(compressed.length > capacities[pgNo]) {
+                if(capacities[pgNo] > 0) {
+                    release(offsets[pgNo], capacities[pgNo]);
+                }
+                int capacity = (compressed.length + EXTENT_ALIGN - 1) / EXTENT_ALIGN * EXTENT_ALIGN;
+                offsets[pgNo] = allocate(capacity);
+                capacities[pgNo] = capacity;
+            }
+            long offset = offsets[pgNo];
+            lengths[pgNo] = compressed.length;
+            numPages = Math.max(numPages, pgNo + 1);
+            // 先写数据再写映射表项，映射表项不会指向还没有写入的数据
+            writeFully(data, ByteBuffer.wrap(compressed), offset);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putLong(offset).putInt(compressed.length).putInt(capacities[pgNo]).flip();
+            writeFully(table, entry, (long) pgNo * ENTRY_SIZE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 数据文件中压缩后的page实际占用的字节数
+     */
+    long getStoredBytes() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for(int i = 0; i < numPages; i++) {
+                total += lengths[i];
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if(n > offsets.length) {
+            int len = Math.max(n, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, len);
+            lengths = Arrays.copyOf(lengths, len);
+            capacities = Arrays.copyOf(capacities, len);
+        }
+    }
+
+    /**
+     * 优先复用容量最接近的空闲extent，多出的部分仍然留在空闲列表中，没有足够大的空闲extent就在文件末尾分配
+     */
+    private long allocate(int capacity) {
+        Map.Entry<Integer, ArrayDeque<Long>> free = freeExtents.ceilingEntry(capacity);
+        if(free != null) {
+            long offset = free.getValue().poll();
+            if(free.getValue().isEmpty()) {
+                freeExtents.remove(free.getKey());
+            }
+            if(free.getKey() > capacity) {
+                release(offset + capacity, free.getKey() - capacity);
+            }
+            return offset;
+        }
+        long offset = end;
+        end += capacity;
+        return offset;
+    }
+
+    private void release(long offset, int capacity) {
+        freeExtents.computeIfAbsent(capacity, k -> new ArrayDeque<>()).add(offset);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while(buf.hasRemaining()) {
+            if(ch.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("读取超出文件末尾");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while(buf.hasRemaining()) {
+            ch.write(buf, pos + buf.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            table.close();
+        }
+    }
+}
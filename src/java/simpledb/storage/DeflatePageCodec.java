@@ -0,0 +1,81 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * PageCodec using the deflate algorithm of java.util.zip. Compresses better
+ * than {@link LzPageCodec} at a higher CPU cost.
+ */
+public class DeflatePageCodec implements PageCodec {
+
+    private final int level;
+
+    // Deflater/Inflater初始化时要分配几百KB的native内存，每个线程复用一个，每次使用前reset
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * @param level the compression level, from Deflater.BEST_SPEED to
+     *              Deflater.BEST_COMPRESSION
+     */
+    public DeflatePageCodec(int level) {
+        if(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid deflate level " + level);
+        }
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public byte[] compress(byte[] page) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(page);
+        deflater.finish();
+        // 不可压缩的数据deflate后会略大于原始长度
+        byte[] out = new byte[page.length + page.length / 64 + 64];
+        int len = 0;
+        while(!deflater.finished()) {
+            if(len == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            len += deflater.deflate(out, len, out.length - len);
+        }
+        return Arrays.copyOf(out, len);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLen, byte[] page) throws IOException {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(src, 0, srcLen);
+        try {
+            int len = 0;
+            while(len < page.length && !inflater.finished()) {
+                int n = inflater.inflate(page, len, page.length - len);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += n;
+            }
+            if(len != page.length || !inflater.finished()) {
+                throw new IOException("压缩数据解压后长度不是" + page.length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("压缩数据已损坏", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "deflate(" + level + ")";
+    }
+}
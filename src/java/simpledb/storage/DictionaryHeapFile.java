@@ -0,0 +1,96 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * DictionaryHeapFile is a HeapFile that stores some STRING_TYPE columns as
+ * 4 byte codes into a per-table {@link StringDictionary} instead of
+ * Type.STRING_LEN + 4 bytes. It is meant for low-cardinality columns: a
+ * table with a few hundred distinct values in such a column shrinks by up
+ * to 128 bytes per row and per encoded column.
+ * <p>
+ * The table keeps its logical TupleDesc: encoded columns are read as
+ * {@link EncodedStringField}s, which compare by code when both sides come
+ * from the same dictionary, and Predicate equality against a constant
+ * compares codes as well. On disk the pages are HeapPages laid out by a
+ * physical TupleDesc where the encoded columns are INT_TYPE (see
+ * {@link DictionaryPage}). The dictionary is kept in a file next to the
+ * table file with the suffix ".dict".
+ */
+public class DictionaryHeapFile extends HeapFile {
+
+    private final boolean[] encoded;
+    private final TupleDesc physicalTd;
+    private final StringDictionary dictionary;
+
+    /**
+     * Constructs a heap file backed by f whose given columns are dictionary
+     * encoded. A file must always be opened with the same encoded columns.
+     *
+     * @param encodedColumns indexes of STRING_TYPE columns of td to encode
+     * @throws IllegalArgumentException if a column is not a STRING_TYPE
+     *         column of td
+     * @throws UncheckedIOException if the dictionary file can't be read
+     */
+    public DictionaryHeapFile(File f, TupleDesc td, int... encodedColumns) {
+        super(f, td);
+        this.encoded = new boolean[td.numFields()];
+        for(int i : encodedColumns) {
+            if(i < 0 || i >= td.numFields() || td.getFieldType(i) != Type.STRING_TYPE) {
+                throw new IllegalArgumentException("第" + i + "列不是字符串列，不能字典编码");
+            }
+            encoded[i] = true;
+        }
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for(int i = 0; i < types.length; i++) {
+            types[i] = encoded[i] ? Type.INT_TYPE : td.getFieldType(i);
+            names[i] = td.getFieldName(i);
+        }
+        this.physicalTd = new TupleDesc(types, names);
+        try {
+            this.dictionary = new StringDictionary(new File(f.getPath() + ".dict"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return true if column i is dictionary encoded
+     */
+    public boolean isEncoded(int i) {
+        return encoded[i];
+    }
+
+    /**
+     * @return the TupleDesc the pages of this file are laid out with, where
+     *         the encoded columns are INT_TYPE
+     */
+    public TupleDesc getPhysicalTupleDesc() {
+        return physicalTd;
+    }
+
+    /**
+     * Closes the table file and the dictionary file. Both are reopened if
+     * this file is used again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        super.close();
+        dictionary.close();
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new DictionaryPage(pid, data, this);
+    }
+}
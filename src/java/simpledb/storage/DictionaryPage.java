@@ -0,0 +1,139 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A page of a {@link DictionaryHeapFile}. The page is stored as a HeapPage
+ * laid out by the physical TupleDesc of the file, where dictionary-encoded
+ * columns hold 4 byte codes. Tuples are translated between the logical and
+ * physical form at the page boundary: inserted strings are encoded (and
+ * added to the dictionary if needed), and tuples read from the page carry
+ * {@link EncodedStringField}s for the encoded columns.
+ */
+public class DictionaryPage implements TuplePage {
+
+    private final DictionaryHeapFile file;
+    private final HeapPage physical;
+
+    /**
+     * Create a DictionaryPage from a set of bytes of data read from disk; the
+     * table must be a DictionaryHeapFile registered in the catalog.
+     */
+    public DictionaryPage(HeapPageId id, byte[] data) {
+        this(id, ByteBuffer.wrap(data), (DictionaryHeapFile) Database.getCatalog().getDatabaseFile(id.getTableId()));
+    }
+
+    DictionaryPage(HeapPageId id, ByteBuffer data, DictionaryHeapFile file) {
+        this(new HeapPage(id, data, file.getPhysicalTupleDesc()), file);
+    }
+
+    private DictionaryPage(HeapPage physical, DictionaryHeapFile file) {
+        this.file = file;
+        this.physical = physical;
+    }
+
+    public HeapPageId getId() {
+        return physical.getId();
+    }
+
+    public TransactionId isDirty() {
+        return physical.isDirty();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        physical.markDirty(dirty, tid);
+    }
+
+    public byte[] getPageData() {
+        return physical.getPageData();
+    }
+
+    public DictionaryPage getBeforeImage() {
+        return new DictionaryPage(physical.getBeforeImage(), file);
+    }
+
+    public void setBeforeImage() {
+        physical.setBeforeImage();
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return physical.hasRoomFor(t);
+    }
+
+    public boolean isFull() {
+        return physical.isFull();
+    }
+
+    /**
+     * Encodes the dictionary-encoded columns of t and adds it to the page.
+     *
+     * @throws DbException if the page is full, the tupledesc is mismatch, or
+     *         a new value can't be added to the dictionary
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        TupleDesc td = file.getTupleDesc();
+        if(!t.getTupleDesc().equals(td)) {
+            throw new DbException("TD匹配不上");
+        }
+        Tuple stored = new Tuple(file.getPhysicalTupleDesc());
+        for(int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if(file.isEncoded(i)) {
+                try {
+                    f = new IntField(file.getDictionary().encode(((StringField) f).getValue()));
+                } catch (IOException e) {
+                    throw new DbException("无法写入字典: " + e.getMessage());
+                }
+            }
+            stored.setField(i, f);
+        }
+        physical.insertTuple(stored);
+        t.setRecordId(stored.getRecordId());
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        // HeapPage只根据RecordId删除
+        physical.deleteTuple(t);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page in their logical form
+     */
+    public Iterator<Tuple> iterator() {
+        Iterator<Tuple> it = physical.iterator();
+        TupleDesc td = file.getTupleDesc();
+        StringDictionary dictionary = file.getDictionary();
+        return new Iterator<Tuple>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Tuple next() {
+                if(!hasNext()) throw new NoSuchElementException("迭代越界");
+                Tuple stored = it.next();
+                Tuple t = new Tuple(td);
+                for(int i = 0; i < td.numFields(); i++) {
+                    // 编码列只读出4字节的编码，字符串直接取字典中的同一个对象
+                    t.setField(i, file.isEncoded(i)
+                            ? new EncodedStringField(dictionary, stored.getInt(i)) : stored.getField(i));
+                }
+                t.setRecordId(stored.getRecordId());
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("tuple不允许删除");
+            }
+        };
+    }
+}
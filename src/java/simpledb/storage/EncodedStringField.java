@@ -0,0 +1,78 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+/**
+ * A StringField read from a dictionary-encoded column of a
+ * {@link DictionaryHeapFile}. It carries the code of its value in the
+ * table's {@link StringDictionary}; the value itself is the string instance
+ * held by the dictionary, so it is never copied or parsed per tuple.
+ * <p>
+ * Two EncodedStringFields from the same dictionary are compared for
+ * equality by their codes. Otherwise it behaves exactly like a StringField
+ * with the same value, and hashes the same way, so it can be mixed with
+ * plain StringFields in joins and hash tables.
+ */
+public class EncodedStringField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient StringDictionary dictionary;
+    private final int code;
+
+    /**
+     * @param dictionary the dictionary the code belongs to
+     * @param code the code of the value in dictionary
+     */
+    public EncodedStringField(StringDictionary dictionary, int code) {
+        super(dictionary.decode(code), Type.STRING_LEN);
+        this.dictionary = dictionary;
+        this.code = code;
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    private boolean sameDictionary(Field field) {
+        return field instanceof EncodedStringField && dictionary != null
+                && ((EncodedStringField) field).dictionary == dictionary;
+    }
+
+    @Override
+    public boolean equals(Object field) {
+        if (field instanceof Field && sameDictionary((Field) field)) {
+            return ((EncodedStringField) field).code == code;
+        }
+        return super.equals(field);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Compares by code for EQUALS and NOT_EQUALS when val comes from the
+     * same dictionary, and by value otherwise.
+     *
+     * @see StringField#compare
+     */
+    @Override
+    public boolean compare(Predicate.Op op, Field val) {
+        if (sameDictionary(val)) {
+            if (op == Predicate.Op.EQUALS) {
+                return ((EncodedStringField) val).code == code;
+            }
+            if (op == Predicate.Op.NOT_EQUALS) {
+                return ((EncodedStringField) val).code != code;
+            }
+        }
+        return super.compare(op, val);
+    }
+}
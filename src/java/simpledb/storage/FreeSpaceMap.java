@@ -0,0 +1,82 @@
+package simpledb.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * HeapFile的空闲空间映射，插入tuple时直接跳到可能有空位的page，不用从第0页开始逐页加写锁检查
+ *
+ * 每个page一位，置位表示上一次插入时发现这个page连最小的tuple都放不下，没有置位表示可能还有空位
+ * 映射只是提示：插入时仍然要在写锁下用hasRoomFor确认，删除tuple后清除对应的位
+ * 插入的事务回滚后page又有了空位，但位不会被清除，直到page上再有tuple被删除
+ *
+ * 映射只在内存中维护，HeapFile关闭时写入数据文件旁边的.fsm文件，打开时读入并删除该文件，
+ * 没有正常关闭时就没有.fsm文件，所有page都当作可能有空位，插入时逐渐重建
+ */
+class FreeSpaceMap {
+
+    private final BitSet full = new BitSet();
+
+    /**
+     * 读入f的.fsm文件并删除，文件不存在或损坏时得到空的映射
+     */
+    FreeSpaceMap(File f) {
+        File file = getFile(f);
+        if(!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long[] words = new long[in.readInt()];
+            for(int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            full.or(BitSet.valueOf(words));
+        } catch (IOException e) {
+            full.clear();
+        }
+        file.delete();
+    }
+
+    /**
+     * @return 保存f的空闲空间映射的文件
+     */
+    static File getFile(File f) {
+        return new File(f.getPath() + ".fsm");
+    }
+
+    /**
+     * @return [from, numPages)中第一个可能有空位的page号，没有时返回-1
+     */
+    synchronized int nextCandidate(int from, int numPages) {
+        int pgNo = full.nextClearBit(from);
+        return pgNo < numPages ? pgNo : -1;
+    }
+
+    synchronized void markFull(int pgNo) {
+        full.set(pgNo);
+    }
+
+    synchronized void markHasRoom(int pgNo) {
+        full.clear(pgNo);
+    }
+
+    /**
+     * 把映射写入f的.fsm文件
+     */
+    synchronized void save(File f) throws IOException {
+        long[] words = full.toLongArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(f))))) {
+            out.writeInt(words.length);
+            for(long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -20,11 +24,45 @@ import java.util.*;
  * @see HeapPage#HeapPage
  * @author Sam Madden
  */
-public class HeapFile implements DbFile {
+public class HeapFile implements DbFile, Closeable {
 
     private File f;
     private TupleDesc td;
-    private int numPage;
+    // 其他事务可见的page数，bulkLoad写入的page在事务提交之前不算在内
+    private volatile int numPage;
+    // 文件中实际写入的page数，包括还没有提交的bulkLoad写入的page，加锁访问
+    private int filePages;
+    // 还没有结束的事务bulkLoad写入的page号区间[start, end)，加锁访问
+    private final Map<TransactionId, List<int[]>> bulkLoads = new HashMap<>();
+
+    // 整个生命周期共用一个channel，用positional读写，并发读写不会争用同一个文件指针
+    private volatile FileChannel channel;
+
+    // mmap模式下readPage从映射区域拷贝page，省掉的只是read系统调用，拷贝还在：
+    // page和tuple视图要一直引用page的字节，而映射区域会被writePage覆盖
+    private final boolean memoryMapped;
+
+    // 不为null时page压缩后存储，通过compressedFile读写，不使用channel和mmap
+    private final PageCodec codec;
+    private volatile CompressedPageFile compressedFile;
+
+    // 哪些page已经放不下任何tuple，第一次插入或删除时载入
+    private volatile FreeSpaceMap freeSpace;
+
+    // 单个MappedByteBuffer不能超过2GB，大文件按段映射
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    // bulkLoad一次写出的page数
+    private static final int BULK_LOAD_BATCH_PAGES = 64;
+
+    // 第i段映射文件中从i * segmentSize开始的capacity()个字节，文件变长后按需重新映射
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /** Number of pages a sequential scan reads ahead of the page it is on by default. */
+    public static final int DEFAULT_READ_AHEAD_PAGES = 8;
+
+    // 顺序扫描时提前异步读入的page数，0表示不预读
+    private volatile int readAheadPages = DEFAULT_READ_AHEAD_PAGES;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -34,10 +72,88 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param memoryMapped
+     *            if true, pages are copied out of a read-only memory mapping
+     *            of the file instead of being read with a system call. This
+     *            only removes the syscall, not the copy: a page owns its
+     *            bytes, because its tuples are views over them and a write of
+     *            the page changes the mapping underneath. Meant for
+     *            read-mostly tables; writes still go through the file
+     *            channel.
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        this(f, td, memoryMapped, null);
+    }
+
+    /**
+     * Constructs a heap file whose pages are compressed with the given codec
+     * before they are written to f. Pages are stored in variable-length
+     * extents of f; the table mapping page numbers to extents is kept in a
+     * file next to f with the suffix ".ptt". Both files are created if they
+     * do not exist.
+     * <p>
+     * A compressed file must always be opened with a codec, the same one it
+     * was written with.
+     *
+     * @param codec the codec used to compress pages, e.g. PageCodec.LZ
+     */
+    public HeapFile(File f, TupleDesc td, PageCodec codec) {
+        this(f, td, false, codec);
+    }
+
+    private HeapFile(File f, TupleDesc td, boolean memoryMapped, PageCodec codec) {
         // some code goes here
         this.f = f;
         this.td = td;
-        this.numPage = (int) (f.length() / BufferPool.getPageSize());
+        this.codec = codec;
+        this.numPage = codec == null ? (int) (f.length() / BufferPool.getPageSize()) : CompressedPageFile.countPages(f);
+        this.filePages = numPage;
+        this.memoryMapped = memoryMapped;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @return the codec pages of this file are compressed with, or null if
+     *         they are stored uncompressed
+     */
+    public PageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the number of bytes the compressed pages of this file take,
+     *         or the size of the file if it is not compressed
+     */
+    public long getStoredBytes() throws IOException {
+        return codec == null ? f.length() : getCompressedFile().getStoredBytes();
+    }
+
+    /**
+     * Sets how many pages ahead of the current page the iterators of this
+     * file ask the BufferPool to read in the background; 0 disables
+     * read-ahead.
+     */
+    public void setReadAheadPages(int readAheadPages) {
+        if(readAheadPages < 0) {
+            throw new IllegalArgumentException("readAheadPages must not be negative");
+        }
+        this.readAheadPages = readAheadPages;
+    }
+
+    public int getReadAheadPages() {
+        return readAheadPages;
     }
 
     /**
@@ -76,47 +192,183 @@ public class HeapFile implements DbFile {
         return td;
     }
 
+    /**
+     * 第一次读写时打开FileChannel，之后一直复用
+     * 线程在读写时被中断会导致channel被关闭，这时重新打开
+     */
+    private FileChannel getChannel() throws IOException {
+        FileChannel ch = channel;
+        if(ch == null || !ch.isOpen()) {
+            synchronized (this) {
+                ch = channel;
+                if(ch == null || !ch.isOpen()) {
+                    ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    private CompressedPageFile getCompressedFile() throws IOException {
+        CompressedPageFile cf = compressedFile;
+        if(cf == null) {
+            synchronized (this) {
+                cf = compressedFile;
+                if(cf == null) {
+                    cf = new CompressedPageFile(f, codec, BufferPool.getPageSize());
+                    compressedFile = cf;
+                }
+            }
+        }
+        return cf;
+    }
+
+    private FreeSpaceMap getFreeSpaceMap() {
+        FreeSpaceMap fsm = freeSpace;
+        if(fsm == null) {
+            synchronized (this) {
+                fsm = freeSpace;
+                if(fsm == null) {
+                    fsm = new FreeSpaceMap(f);
+                    freeSpace = fsm;
+                }
+            }
+        }
+        return fsm;
+    }
+
+    /**
+     * mmap模式下返回page在映射区域中的切片
+     * @return position和limit之间是page的内容，page超出文件末尾时返回null
+     */
+    private ByteBuffer mappedPage(int pgNo) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        long segmentSize = MAX_SEGMENT_SIZE / pageSize * pageSize;
+        long pos = (long) pageSize * pgNo;
+        int index = (int) (pos / segmentSize);
+        int offset = (int) (pos % segmentSize);
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer segment = index < segs.length ? segs[index] : null;
+        if(segment == null || segment.capacity() < offset + pageSize) {
+            // 还没有映射，或者映射之后文件变长了
+            segment = mapSegment(index, segmentSize);
+            if(segment == null || segment.capacity() < offset + pageSize) {
+                return null;
+            }
+        }
+        // duplicate之后各线程的position互不影响
+        ByteBuffer page = segment.duplicate();
+        page.limit(offset + pageSize);
+        page.position(offset);
+        return page;
+    }
+
+    private synchronized MappedByteBuffer mapSegment(int index, long segmentSize) throws IOException {
+        FileChannel ch = getChannel();
+        long start = index * segmentSize;
+        long size = Math.min(segmentSize, ch.size() - start);
+        if(size <= 0) {
+            return null;
+        }
+        MappedByteBuffer segment = ch.map(FileChannel.MapMode.READ_ONLY, start, size);
+        MappedByteBuffer[] segs = Arrays.copyOf(segments, Math.max(segments.length, index + 1));
+        segs[index] = segment;
+        segments = segs;
+        return segment;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // some code goes here
+        // HeapPage不拷贝数据，tuple是data上的视图，所以data归page所有，不能复用
         byte[] data = new byte[BufferPool.getPageSize()];
+        if(memoryMapped) {
+            try {
+                ByteBuffer mapped = mappedPage(pid.getPageNumber());
+                if(mapped != null) {
+                    // 不能直接在映射区域上建page：writePage会覆盖这段区域，已经交出去的tuple视图会跟着变
+                    mapped.get(data);
+                    return createPage((HeapPageId) pid, ByteBuffer.wrap(data));
+                }
+                // 超出文件末尾的page按普通方式读，得到全0的page
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         try {
-            int pos = BufferPool.getPageSize() * pid.getPageNumber();
-            RandomAccessFile r = new RandomAccessFile(f, "r");
-            /**
-             * Sets the file-pointer offset measured from the beginning of this file,
-             * at which the next read or write occurs.The offset may be set beyond the end of the file.
-             * Setting the offset beyond the end of the file does not change the file length.
-             * The file length will change only by writing after the offset has been set beyond the end of the file.
-             */
-            r.seek(pos);
-            /**
-             * Reads a byte of data from this file. The byte is returned as an integer in the range 0 to 255 (0x00-0x0ff). This method blocks if no input is yet available.
-             * Although RandomAccessFile is not a subclass of InputStream, this method behaves in exactly the same way as the InputStream.read() method of InputStream.
-             * Returns:
-             * the next byte of data, or -1 if the end of the file has been reached.
-             * Throws:
-             * IOException – if an I/O error occurs. Not thrown if end-of-file has been reached.
-             */
-            r.read(data, 0, data.length);
-            HeapPage heapPage = new HeapPage((HeapPageId) pid, data);
-            return heapPage;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            if(codec != null) {
+                getCompressedFile().read(pid.getPageNumber(), data);
+                return createPage((HeapPageId) pid, ByteBuffer.wrap(data));
+            }
+            // positional read不移动文件指针，多个线程可以同时读同一个文件
+            long pos = (long) BufferPool.getPageSize() * pid.getPageNumber();
+            FileChannel ch = getChannel();
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while(buf.hasRemaining()) {
+                if(ch.read(buf, pos + buf.position()) < 0) {
+                    break;
+                }
+            }
+            // 文件末尾之后的部分保持全0
+            return createPage((HeapPageId) pid, ByteBuffer.wrap(data));
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Creates the in-memory page for the bytes read from disk. The format of
+     * HeapFile pages is that of {@link HeapPage}; subclasses override this to
+     * store their pages in another format. A page of all zeros must be an
+     * empty page, since that is what new pages and reads beyond the end of the
+     * file produce.
+     *
+     * @param data the page bytes between position and limit; the page may
+     *             keep a reference to them
+     */
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new HeapPage(pid, data);
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
-        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
-            raf.seek(page.getId().getPageNumber() * BufferPool.getPageSize());
-            byte[] data = page.getPageData();
-            raf.write(data);
+        if(codec != null) {
+            getCompressedFile().write(page.getId().getPageNumber(), page.getPageData());
+            return;
+        }
+        long pos = (long) BufferPool.getPageSize() * page.getId().getPageNumber();
+        FileChannel ch = getChannel();
+        ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+        while(buf.hasRemaining()) {
+            ch.write(buf, pos + buf.position());
+        }
+    }
+
+    /**
+     * Closes the channel to the backing file and saves the free-space map
+     * next to it, in a file with the suffix ".fsm". The file is reopened if
+     * this HeapFile is read or written again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        // 映射在MappedByteBuffer被回收之前一直有效，这里只能丢弃引用
+        segments = new MappedByteBuffer[0];
+        if(freeSpace != null) {
+            freeSpace.save(f);
+            freeSpace = null;
+        }
+        if(channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if(compressedFile != null) {
+            compressedFile.close();
+            compressedFile = null;
         }
     }
 
@@ -144,66 +396,239 @@ public class HeapFile implements DbFile {
      */
     public List<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-        // some code goes here
-        // 遍历pages， 找到header标记为空的
+        // 只检查空闲空间映射中可能有空位的page，不再从第0页开始逐页加写锁
         List<Page> list = new ArrayList<>();
-        for(int i = 0; i < numPage; i++) {
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        for(int i = fsm.nextCandidate(0, numPage); i >= 0; i = fsm.nextCandidate(i + 1, numPage)) {
             HeapPageId pid = new HeapPageId(getId(), i); //获取当前页的pid
-            HeapPage heapPage = null;
+            boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            TuplePage heapPage = null;
             try {
-                heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+                heapPage = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
-            if(heapPage.getNumEmptySlots() != 0) {
+            if(heapPage.hasRoomFor(t)) {
                 heapPage.insertTuple(t);
                 heapPage.markDirty(true, tid);
                 list.add(heapPage);
-                break;
+                return list;
             }
-        }
-        // 从缓冲池中将要修改的页面拿出来，判断当前页面是否还有空的槽，有的空的slot就插进去，否则要新建一个一页面
-        // 新建一个页面，需要调用new HeapPage;
-        // 将numPage自增
-        // 将page写入，然后从缓冲池中拿出这个页面；
-
-        if(list.size() == 0) { // 上一段没有插进来，代表pages为满的
-            // 创建一个新的page，为numPages
-            HeapPageId heapPageId = new HeapPageId(getId(), numPages());
-            HeapPage blankPage = new HeapPage(heapPageId, HeapPage.createEmptyPageData());
-            numPage++; // page要新增一页了
-            writePage(blankPage);
-            HeapPage page = null;
-            try {
-                page = (HeapPage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_WRITE);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            // t太大放不下不代表更小的tuple也放不下，变长记录的page只有连最小的记录都放不下时才算满
+            if(heapPage.isFull()) {
+                fsm.markFull(i);
+            }
+            // 只是为了检查才加的锁，page没有被修改，可以提前释放，不必锁到事务结束
+            if(!locked) {
+                Database.getBufferPool().unsafeReleasePage(tid, pid);
             }
-            page.insertTuple(t);
-            page.markDirty(true, tid);
-            list.add(page);
         }
 
+        // 所有page都满了，在文件末尾新建一个page
+        HeapPageId heapPageId = appendPage();
+        TuplePage page = null;
+        try {
+            page = (TuplePage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_WRITE);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        page.insertTuple(t);
+        page.markDirty(true, tid);
+        list.add(page);
         return list;
         // not necessary for lab1
     }
 
+    /**
+     * 在文件末尾写入一个空page，多个事务同时插入时每个新page只会被分配一次
+     * 先写入再增加numPage，迭代器不会看到还没有写入的page
+     * 新page在还没有提交的bulkLoad写入的page之后，这些page随之变得可见，但load的事务对它们持有写锁
+     */
+    private synchronized HeapPageId appendPage() throws IOException {
+        HeapPageId pid = new HeapPageId(getId(), filePages);
+        writePage(createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData())));
+        filePages++;
+        numPage = filePages;
+        return pid;
+    }
+
+    /**
+     * Appends the given tuples to the end of this file without going through
+     * the BufferPool. Tuples are packed into new pages, which are written to
+     * disk in batches of consecutive pages; free space in the existing pages
+     * is not reused. Before each batch is written, an UPDATE record is logged
+     * for every page of the batch. The before image is the empty page and
+     * the after image is the full page, and the log is forced.
+     * <p>
+     * tid takes an exclusive lock on every loaded page, and the pages are not
+     * counted by {@link #numPages()} until tid commits, so other transactions
+     * don't see the load before then. If tid aborts, the loaded pages are
+     * removed: the file is truncated back to its length before the load, or,
+     * if pages were appended after them, they are overwritten with empty
+     * pages. Inserts that need to append a page wait until the load is done.
+     *
+     * @param tid the transaction loading the tuples
+     * @param tuples the tuples to load; each is updated with the RecordId
+     *               it is stored at
+     * @return the number of tuples loaded
+     * @throws DbException if a tuple does not match the TupleDesc of this
+     *                     file; the tuples loaded before it stay loaded
+     *                     until tid completes. If writing them fails, the
+     *                     IOException is added to it as a suppressed
+     *                     exception
+     * @throws IOException if a batch can't be written
+     * @throws TransactionAbortedException if tid is aborted while it locks a
+     *                     loaded page
+     */
+    public synchronized int bulkLoad(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        List<TuplePage> batch = new ArrayList<>(BULK_LOAD_BATCH_PAGES);
+        int loaded = 0;
+        TuplePage page = null;
+        try {
+            while(tuples.hasNext()) {
+                Tuple t = tuples.next();
+                if(page == null || !page.hasRoomFor(t)) {
+                    if(batch.size() == BULK_LOAD_BATCH_PAGES) {
+                        writeBatch(tid, batch, true);
+                    }
+                    HeapPageId pid = new HeapPageId(getId(), filePages + batch.size());
+                    Database.getBufferPool().lockBulkLoadedPage(tid, this, pid);
+                    page = createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+                    batch.add(page);
+                }
+                page.insertTuple(t);
+                loaded++;
+            }
+        } catch (DbException | RuntimeException e) {
+            // 出错时也写出已经放进page的tuple，这些tuple的RecordId已经设置好了
+            // 写出失败时抛出原来的异常，写出的异常附在它上面
+            // writeBatch本身抛出的IOException不会到这里，不会把写失败的batch再写一次
+            if(!batch.isEmpty()) {
+                try {
+                    writeBatch(tid, batch, false);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        if(!batch.isEmpty()) {
+            writeBatch(tid, batch, false);
+        }
+        return loaded;
+    }
+
+    /**
+     * 记录page的日志后把batch写到文件末尾并清空batch
+     * @param full batch中的page是否都已经写满，最后一批的最后一页可能还有空位
+     */
+    private void writeBatch(TransactionId tid, List<TuplePage> batch, boolean full) throws IOException {
+        LogFile log = Database.getLogFile();
+        for(TuplePage page : batch) {
+            log.logWrite(tid, createPage((HeapPageId) page.getId(), ByteBuffer.wrap(HeapPage.createEmptyPageData())), page);
+        }
+        // write ahead: page写入文件之前日志必须已经落盘
+        log.force();
+        if(codec != null) {
+            for(TuplePage page : batch) {
+                writePage(page);
+            }
+        } else {
+            // 连续的page拼起来一次写出
+            int pageSize = BufferPool.getPageSize();
+            ByteBuffer buf = ByteBuffer.allocate(pageSize * batch.size());
+            for(TuplePage page : batch) {
+                buf.put(page.getPageData());
+            }
+            buf.flip();
+            long pos = (long) pageSize * filePages;
+            FileChannel ch = getChannel();
+            while(buf.hasRemaining()) {
+                ch.write(buf, pos + buf.position());
+            }
+        }
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        for(int i = 0; i < batch.size() - (full ? 0 : 1); i++) {
+            fsm.markFull(filePages + i);
+        }
+        List<int[]> loaded = bulkLoads.computeIfAbsent(tid, k -> new ArrayList<>());
+        int[] last = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1);
+        if(last != null && last[1] == filePages) {
+            last[1] += batch.size();
+        } else {
+            loaded.add(new int[]{filePages, filePages + batch.size()});
+        }
+        filePages += batch.size();
+        batch.clear();
+    }
+
+    /**
+     * 事务结束时由BufferPool在释放锁之前调用：提交时让其他事务看到tid bulkLoad的page，回滚时删除这些page
+     */
+    void completeBulkLoad(TransactionId tid, boolean commit) throws IOException {
+        List<int[]> loaded;
+        synchronized (this) {
+            loaded = bulkLoads.remove(tid);
+            if(loaded == null) {
+                return;
+            }
+            if(commit) {
+                numPage = Math.max(numPage, loaded.get(loaded.size() - 1)[1]);
+                return;
+            }
+            // 从后往前删除，文件末尾的load可以直接截断
+            for(int i = loaded.size() - 1; i >= 0; i--) {
+                removeLoadedPages(loaded.get(i)[0], loaded.get(i)[1]);
+            }
+        }
+        // 不持有这个HeapFile的锁：BufferPool写回page时可能要获取它
+        for(int[] range : loaded) {
+            for(int pgNo = range[0]; pgNo < range[1]; pgNo++) {
+                Database.getBufferPool().discardPage(new HeapPageId(getId(), pgNo));
+            }
+        }
+    }
+
+    /**
+     * 删除bulkLoad写入的[start, end)这些page，后面没有其他page时截断文件，否则改写成空page
+     */
+    private synchronized void removeLoadedPages(int start, int end) throws IOException {
+        if(end == filePages && codec == null) {
+            // 截断之后映射中超出文件末尾的部分不能再访问
+            segments = new MappedByteBuffer[0];
+            getChannel().truncate((long) BufferPool.getPageSize() * start);
+            filePages = start;
+            numPage = Math.min(numPage, start);
+        } else {
+            for(int pgNo = start; pgNo < end; pgNo++) {
+                HeapPageId pid = new HeapPageId(getId(), pgNo);
+                writePage(createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData())));
+            }
+        }
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        for(int pgNo = start; pgNo < end; pgNo++) {
+            fsm.markHasRoom(pgNo);
+        }
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
         ArrayList<Page> list = new ArrayList<>();
         PageId pid = t.getRecordId().getPageId();
-        HeapPage hpage = null;
+        TuplePage hpage = null;
         for(int i = 0; i < numPages(); i++) {
             if(i == pid.getPageNumber()) {
                 try {
-                    hpage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+                    hpage = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
                 hpage.deleteTuple(t);
-                 list.add(hpage);
+                getFreeSpaceMap().markHasRoom(i);
+                list.add(hpage);
             }
         }
         if(hpage == null) {
@@ -223,6 +648,8 @@ public class HeapFile implements DbFile {
         private TransactionId tid;
         private Iterator<Tuple> tupleIterator;
         private int pagePos;
+        // [pagePos + 1, prefetchedTo)之间的page已经提交了预读
+        private int prefetchedTo;
 
         public HeapFileIterator(TransactionId tid) {
             this.tid = tid;
@@ -235,6 +662,7 @@ public class HeapFile implements DbFile {
         @Override
         public void open() throws DbException, TransactionAbortedException {
             pagePos = 0;
+            prefetchedTo = 1;
             HeapPageId pid = new HeapPageId(getId(), pagePos);
             tupleIterator = getTuplesInPage(pid);
         }
@@ -242,27 +670,47 @@ public class HeapFile implements DbFile {
         private Iterator<Tuple> getTuplesInPage(HeapPageId pid) throws TransactionAbortedException, DbException {
             // 要获得元组的迭代器，首先要获得元组所在的page
             // 不能使用HeapFile的readPage方法，要使用BufferPool来获得page，才能实现缓存功能；
-            HeapPage page = null;
+            readAhead();
+            TuplePage page = null;
             try {
-                page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
             return page.iterator();
         }
 
+        /**
+         * 让BufferPool在后台读入当前page之后的readAheadPages个page，处理当前page的同时进行I/O
+         * 预读不加锁，getPage时才加锁
+         */
+        private void readAhead() {
+            int window = readAheadPages;
+            int end = Math.min(numPage, pagePos + 1 + window);
+            // 窗口消耗过半时才补充，避免每翻一页就提交一次
+            if(window == 0 || prefetchedTo - pagePos > window / 2 + 1) {
+                return;
+            }
+            for(int pgNo = Math.max(prefetchedTo, pagePos + 1); pgNo < end; pgNo++) {
+                Database.getBufferPool().prefetchPage(new HeapPageId(getId(), pgNo));
+            }
+            prefetchedTo = Math.max(prefetchedTo, end);
+        }
+
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
             // 检查是否开启迭代
             if(tupleIterator == null) return false;
             // 当前页还有tuple没有被遍历
             if(tupleIterator.hasNext()) return true;
-            // 检查是否还有下一页要遍历
-            if(pagePos < numPage - 1) {
+            // 检查是否还有下一页要遍历，跳过没有tuple的page
+            while(pagePos < numPage - 1) {
                 pagePos++; // 跑到下一页
                 HeapPageId nextPid = new HeapPageId(getId(), pagePos);
                 tupleIterator = getTuplesInPage(nextPid);
-                return tupleIterator.hasNext();
+                if(tupleIterator.hasNext()) {
+                    return true;
+                }
             }
             // 没有下一页
             return false;
@@ -6,6 +6,7 @@ import simpledb.common.Debug;
 import simpledb.common.Catalog;
 import simpledb.transaction.TransactionId;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.io.*;
 
@@ -17,15 +18,24 @@ import java.io.*;
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
     final byte[] header;
+    // tuples[i]为null而第i个slot已使用，代表这个tuple从磁盘读入后没有被修改过，内容只在data中
     final Tuple[] tuples;
     final int numSlots;
+    // 从磁盘读出的page内容，tuple是其上的视图，page的修改只反映在header和tuples中，不会写回data
+    final ByteBuffer data;
+    final int headerSize;
+    final int tupleSize;
+    // 空slot的数量，随header一起维护，判断page是否还有空位不用每次数一遍header
+    private int numEmptySlots;
     private TransactionId lastDirtyOperation;
 
+    // page上次setBeforeImage时的内容，null表示之后还没有被修改过，before image就是当前内容
+    // 第一次修改之前才序列化，只读的page不需要为before image付出任何开销
     byte[] oldData;
     private final Byte oldDataLock= (byte) 0;
 
@@ -46,25 +56,47 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from the bytes between the position and the limit of
+     * data, e.g. a slice of a larger buffer. The format is the same as
+     * for {@link #HeapPage(HeapPageId, byte[])}; the position of data is not
+     * modified.
+     * <p>
+     * Tuples are not decoded here: the page keeps a reference to data and
+     * each tuple is a view that decodes its fields from it on first access,
+     * so data must not be modified afterwards.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) {
+        this(id, data, Database.getCatalog().getTupleDesc(id.getTableId()));
+    }
+
+    /**
+     * 按给定的TupleDesc而不是catalog中table的TupleDesc解析page，
+     * 用于page上存储的格式与table的逻辑格式不同的情况，如DictionaryPage
+     */
+    HeapPage(HeapPageId id, ByteBuffer data, TupleDesc td) {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.td = td;
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.tupleSize = td.getSize();
+        this.headerSize = getHeaderSize();
+        // slice之后下标从page的第一个字节开始
+        this.data = data.slice();
+        if(this.data.remaining() < headerSize + tupleSize * numSlots) {
+            throw new IllegalArgumentException("page数据长度不足");
+        }
 
         // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        header = new byte[headerSize];
+        this.data.duplicate().get(header);
+        for(int i = 0; i < numSlots; i++) {
+            if(!isSlotUsed(i)) numEmptySlots++;
         }
-        dis.close();
+
+        tuples = new Tuple[numSlots];
 
         setBeforeImage();
     }
@@ -99,7 +131,7 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            return newPage(oldDataRef == null ? getPageData() : oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -108,10 +140,29 @@ public class HeapPage implements Page {
         return null;
     }
     
+    /**
+     * 用给定的内容创建同一格式的page，子类使用其他格式时覆盖
+     */
+    HeapPage newPage(byte[] pageData) throws IOException {
+        return new HeapPage(pid, ByteBuffer.wrap(pageData), td);
+    }
+
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = null;
+        }
+    }
+
+    /**
+     * 修改page之前调用，如果这是setBeforeImage之后的第一次修改，把当前内容保存为before image
+     */
+    private void saveBeforeImage() {
+        synchronized(oldDataLock)
+        {
+            if(oldData == null) {
+                oldData = getPageData();
+            }
         }
     }
 
@@ -124,37 +175,15 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * 插入到这个page的tuple直接返回，从磁盘读入的tuple每次访问都创建data上的新视图，字段在使用时才解析
+     * 视图不保存在tuples中，并发读同一个page的线程之间没有共享的可变状态
+     * @return slot为空时返回null
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        // 如果slotId对应的槽为空
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+    Tuple getTuple(int slotId) {
+        Tuple t = tuples[slotId];
+        if (t == null && isSlotUsed(slotId)) {
+            t = new Tuple(td, data, headerSize + slotId * tupleSize, new RecordId(pid, slotId));
         }
-
         return t;
     }
 
@@ -174,56 +203,48 @@ public class HeapPage implements Page {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
 
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        try {
+            // create the header of the page
+            dos.write(header);
+
+            // create the tuples
+            byte[] raw = data.hasArray() ? null : new byte[tupleSize];
+            byte[] zeros = new byte[tupleSize];
+            for (int i=0; i<numSlots; i++) {
+
+                // empty slot
+                if (!isSlotUsed(i)) {
+                    dos.write(zeros);
+                    continue;
+                }
 
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                // 读入后没有被修改过的tuple，直接拷贝原始字节
+                Tuple t = tuples[i];
+                if (t == null) {
+                    int offset = headerSize + i * tupleSize;
+                    if (raw == null) {
+                        dos.write(data.array(), data.arrayOffset() + offset, tupleSize);
+                    } else {
+                        ByteBuffer src = data.duplicate();
+                        src.position(offset);
+                        src.get(raw);
+                        dos.write(raw);
                     }
-
+                    continue;
                 }
-                continue;
-            }
 
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
+                // non-empty slot
+                for (int j=0; j<td.numFields(); j++) {
+                    t.getField(j).serialize(dos);
                 }
             }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
 
-        try {
+            // padding
+            int zerolen = len - (headerSize + tupleSize * numSlots);
+            dos.write(new byte[zerolen], 0, zerolen);
             dos.flush();
         } catch (IOException e) {
+            // this really shouldn't happen
             e.printStackTrace();
         }
 
@@ -261,10 +282,25 @@ public class HeapPage implements Page {
         if(!tPid.equals(pid) || !isSlotUsed(tNo)) {
             throw new DbException("要删除的元组本来就为空");
         }
+        saveBeforeImage();
         tuples[tNo] = null;
         markSlotUsed(tNo, false);
     }
 
+    /**
+     * @return true if the page has an empty slot
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
+    /**
+     * @return true if the page has no empty slot
+     */
+    public boolean isFull() {
+        return getNumEmptySlots() == 0;
+    }
+
     /**
      * Adds the specified tuple to the page;  the tuple should be updated to reflect
      *  that it is now stored on this page.
@@ -279,10 +315,13 @@ public class HeapPage implements Page {
         if(!t.getTupleDesc().equals(td)) {
             throw new DbException("TD匹配不上");
         }
+        if(numEmptySlots == 0) {
+            throw new DbException("这个Page满了");
+        }
 
-
-        for(int i = 0; i < getNumTuples(); i++) {
+        for(int i = 0; i < numSlots; i++) {
             if(!isSlotUsed(i)) {
+                saveBeforeImage();
                 tuples[i] = t;
                 // 重要：每个tuple都有一个recordId, 记得新增了要给他一个身份证
                 t.setRecordId(new RecordId(pid, i));
@@ -317,11 +356,7 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int num = 0;
-        for(int i = 0; i < numSlots; i++) {
-            if(!isSlotUsed(i)) num++;
-        }
-        return num;
+        return numEmptySlots;
     }
 
     /**
@@ -347,6 +382,9 @@ public class HeapPage implements Page {
         // not necessary for lab1
         int byteNum = i / 8;//计算在第几个字节
         int posInByte = i % 8;//计算在该字节的第几位,从右往左算（这是因为JVM用big-ending）
+        if(isSlotUsed(i) != value) {
+            numEmptySlots += value ? -1 : 1;
+        }
         header[byteNum] = editBitInByte(header[byteNum], posInByte, value);
     }
 
@@ -381,11 +419,11 @@ public class HeapPage implements Page {
         return new Iterator<Tuple>() {
             private int idx = 0;
             private int cntUsed = 0;
-            private int used = getNumTuples() - getNumEmptySlots();
+            private int used = numSlots - getNumEmptySlots();
 
             @Override
             public boolean hasNext() {
-                return idx  < getNumTuples() && cntUsed < used;
+                return idx  < numSlots && cntUsed < used;
             }
 
             @Override
@@ -393,7 +431,7 @@ public class HeapPage implements Page {
                 if(!hasNext()) throw new NoSuchElementException("迭代越界");
                 while(!isSlotUsed(idx)) idx++;
                 cntUsed++;
-                return tuples[idx++];
+                return getTuple(idx++);
             }
 
             @Override
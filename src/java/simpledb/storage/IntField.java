@@ -54,21 +54,30 @@ public class IntField implements Field {
     public boolean compare(Predicate.Op op, Field val) {
 
         IntField iVal = (IntField) val;
+        return compare(value, op, iVal.value);
+    }
 
+    /**
+     * Compare two int values with the given operator, without boxing them
+     * into IntFields. LIKE is treated as EQUALS, as in compare(Op, Field).
+     *
+     * @return true if "left op right" holds
+     */
+    public static boolean compare(int left, Predicate.Op op, int right) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return left == right;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return left != right;
             case GREATER_THAN:
-                return value > iVal.value;
+                return left > right;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return left >= right;
             case LESS_THAN:
-                return value < iVal.value;
+                return left < right;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return left <= right;
         }
 
         return false;
@@ -0,0 +1,142 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 PageCodec following the LZ4 block format: the output is a
+ * series of sequences, each made of a token byte, the literal bytes and a
+ * back reference to an earlier match. The high 4 bits of the token are the
+ * number of literals and the low 4 bits the match length minus 4; the value
+ * 15 means more length bytes follow, each added to the length until one is
+ * less than 255. The literals are followed by the match offset as a little
+ * endian unsigned short. The last sequence only has literals.
+ * <p>
+ * Pages are mostly zero padding and repeated field values, which this
+ * codec compresses well at a small fraction of the cost of deflate.
+ */
+public class LzPageCodec implements PageCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+
+    @Override
+    public byte[] compress(byte[] page) {
+        int n = page.length;
+        byte[] out = new byte[n + n / 255 + 16];
+        // 每个4字节序列的hash -> 上一次出现的位置+1，0表示没有出现过
+        int[] table = new int[1 << HASH_BITS];
+        int ip = 0, anchor = 0, op = 0;
+        while(ip + MIN_MATCH <= n) {
+            int seq = readInt(page, ip);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h] - 1;
+            table[h] = ip + 1;
+            if(ref < 0 || ip - ref > MAX_OFFSET || readInt(page, ref) != seq) {
+                ip++;
+                continue;
+            }
+            int matchLen = MIN_MATCH;
+            while(ip + matchLen < n && page[ref + matchLen] == page[ip + matchLen]) {
+                matchLen++;
+            }
+            int token = op;
+            op = writeSequence(page, anchor, ip - anchor, out, op);
+            out[op++] = (byte) (ip - ref);
+            out[op++] = (byte) ((ip - ref) >>> 8);
+            // 填上token的低4位
+            if(matchLen - MIN_MATCH >= 15) {
+                out[token] |= 15;
+                op = writeLength(matchLen - MIN_MATCH - 15, out, op);
+            } else {
+                out[token] |= (byte) (matchLen - MIN_MATCH);
+            }
+            ip += matchLen;
+            anchor = ip;
+        }
+        op = writeSequence(page, anchor, n - anchor, out, op);
+        return Arrays.copyOf(out, op);
+    }
+
+    /**
+     * 写出token(低4位先置0)和literals
+     * @return 写完之后的位置
+     */
+    private static int writeSequence(byte[] src, int start, int literals, byte[] out, int op) {
+        if(literals >= 15) {
+            out[op++] = (byte) (15 << 4);
+            op = writeLength(literals - 15, out, op);
+        } else {
+            out[op++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, start, out, op, literals);
+        return op + literals;
+    }
+
+    private static int writeLength(int len, byte[] out, int op) {
+        while(len >= 255) {
+            out[op++] = (byte) 255;
+            len -= 255;
+        }
+        out[op++] = (byte) len;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLen, byte[] page) throws IOException {
+        int sp = 0, op = 0;
+        try {
+            while(true) {
+                int token = src[sp++] & 0xff;
+                int literals = token >>> 4;
+                if(literals == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xff;
+                        literals += b;
+                    } while(b == 255);
+                }
+                System.arraycopy(src, sp, page, op, literals);
+                sp += literals;
+                op += literals;
+                if(sp >= srcLen) {
+                    break;
+                }
+                int offset = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+                sp += 2;
+                int matchLen = token & 15;
+                if(matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xff;
+                        matchLen += b;
+                    } while(b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int ref = op - offset;
+                if(offset == 0 || ref < 0) {
+                    throw new IOException("压缩数据已损坏");
+                }
+                // match可能和正在写出的部分重叠，只能逐字节拷贝
+                for(int i = 0; i < matchLen; i++) {
+                    page[op++] = page[ref++];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("压缩数据已损坏", e);
+        }
+        if(op != page.length || sp != srcLen) {
+            throw new IOException("压缩数据解压后长度不是" + page.length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "lz";
+    }
+}
@@ -0,0 +1,176 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BufferPool的页表，采用2Q置换算法(Johnson &amp; Shasha, VLDB'94)，能抵抗顺序扫描对热点page的冲刷
+ * A1in: 第一次被访问的page进入FIFO队列，顺序扫描读入的page只会在这里停留，然后被淘汰
+ * A1out: 只记录最近从A1in淘汰的pid，不缓存page本身
+ * Am: 在A1out中还有记录时再次被访问的page才会进入LRU队列，这是真正的热点page
+ * Am的命中需要调整LRU顺序，所以所有操作都由cache自身的锁串行化
+ */
+public class Page2QCache implements PageCache {
+
+    // Key: page的id， Value: page，按插入顺序排列
+    private final LinkedHashMap<PageId, Page> a1in;
+
+    // 从A1in淘汰的pid，按淘汰顺序排列
+    private final LinkedHashSet<PageId> a1out;
+
+    // Key: page的id， Value: page，按访问顺序排列，最近最少使用的在最前面
+    private final LinkedHashMap<PageId, Page> am;
+
+    //允许缓存的最大page数量
+    private final int capacity;
+
+    // A1in的目标长度，缓存满需要淘汰时A1in超过它才从A1in淘汰；缓存有空闲时A1in可以更长
+    private final int kin;
+
+    // A1out最多记录的pid数量
+    private final int kout;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public Page2QCache(int capacity) {
+        this.capacity = capacity;
+        this.kin = Math.max(1, capacity / 4);
+        this.kout = Math.max(1, capacity / 2);
+        this.a1in = new LinkedHashMap<>(capacity);
+        this.a1out = new LinkedHashSet<>(kout);
+        this.am = new LinkedHashMap<>(capacity, 0.75f, true);
+    }
+
+    @Override
+    public synchronized Page get(PageId pid) {
+        Page page = am.get(pid); // 命中Am时移动到LRU队尾
+        if(page != null) {
+            return page;
+        }
+        return a1in.get(pid); // 命中A1in时不改变顺序，短时间内的重复访问不算热点
+    }
+
+    @Override
+    public synchronized boolean isCached(PageId pid) {
+        return am.containsKey(pid) || a1in.containsKey(pid);
+    }
+
+    @Override
+    public synchronized Page putIfAbsent(PageId pid, Page page) throws DbException {
+        Page cached = get(pid);
+        if(cached != null) {
+            return cached;
+        }
+        insert(pid, page);
+        return page;
+    }
+
+    @Override
+    public synchronized void put(PageId pid, Page page) throws DbException {
+        if(am.containsKey(pid)) {
+            am.put(pid, page);
+        } else if(a1in.containsKey(pid)) {
+            a1in.put(pid, page); // 替换已有的key不会改变插入顺序
+        } else {
+            insert(pid, page);
+        }
+    }
+
+    @Override
+    public synchronized void remove(PageId pid) {
+        am.remove(pid);
+        a1in.remove(pid);
+        a1out.remove(pid);
+    }
+
+    private void insert(PageId pid, Page page) throws DbException {
+        if(a1out.remove(pid)) {
+            if(size() >= capacity) {
+                evict();
+            }
+            am.put(pid, page); // 不久前被访问过，是热点page
+            return;
+        }
+        if(size() >= capacity) {
+            evict();
+        }
+        a1in.put(pid, page);
+    }
+
+    /**
+     * A1in超过目标长度时淘汰A1in中最早进入的干净page，并记录到A1out；否则淘汰Am中最近最少使用的干净page
+     * 脏页不能淘汰(NO STEAL)，选中的队列里没有干净page时退而淘汰另一个队列
+     */
+    private void evict() throws DbException {
+        if(a1in.size() > kin || am.isEmpty()) {
+            if(evictFromA1in() || evictFrom(am) != null) {
+                return;
+            }
+        } else {
+            if(evictFrom(am) != null || evictFromA1in()) {
+                return;
+            }
+        }
+        throw new DbException("BufferPool中所有page都是脏页，无法淘汰");
+    }
+
+    private boolean evictFromA1in() {
+        PageId pid = evictFrom(a1in);
+        if(pid == null) {
+            return false;
+        }
+        a1out.add(pid);
+        if(a1out.size() > kout) {
+            Iterator<PageId> it = a1out.iterator();
+            it.next();
+            it.remove();
+        }
+        return true;
+    }
+
+    /**
+     * 按队列顺序淘汰第一个干净的page
+     * @return 被淘汰的pid，队列中全是脏页时返回null
+     */
+    private PageId evictFrom(LinkedHashMap<PageId, Page> queue) {
+        Iterator<Map.Entry<PageId, Page>> it = queue.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<PageId, Page> entry = it.next();
+            if(entry.getValue().isDirty() == null) {
+                it.remove();
+                evictions.incrementAndGet();
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return a1in.size() + am.size();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     *
+     * @return 当前缓存的所有page的快照
+     */
+    @Override
+    public synchronized Iterator<Page> iterator() {
+        List<Page> pages = new ArrayList<>(size());
+        pages.addAll(a1in.values());
+        pages.addAll(am.values());
+        return pages.iterator();
+    }
+}
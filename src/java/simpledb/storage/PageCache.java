@@ -0,0 +1,54 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.util.Iterator;
+
+/**
+ * BufferPool的页表，决定缓存满时淘汰哪个page
+ * 实现必须是线程安全的，并且不能淘汰脏页(NO STEAL)
+ */
+public interface PageCache {
+
+    /**
+     *
+     * @param pid
+     * @return 缓存中的page，不存在则返回null
+     */
+    Page get(PageId pid);
+
+    boolean isCached(PageId pid);
+
+    /**
+     * 缓存从磁盘读出的page
+     * 如果其他线程已经先缓存了同一个page，则保留已缓存的版本并返回它
+     * @return 缓存中的page
+     * @throws DbException 缓存已满，并且所有page都是脏页，无法淘汰
+     */
+    Page putIfAbsent(PageId pid, Page page) throws DbException;
+
+    /**
+     * 缓存page，如果已经缓存了同一个pid，则用page替换旧的版本
+     * @throws DbException 缓存已满，并且所有page都是脏页，无法淘汰
+     */
+    void put(PageId pid, Page page) throws DbException;
+
+    /**
+     * 将pid从缓存中删除，不会写回磁盘
+     */
+    void remove(PageId pid);
+
+    int size();
+
+    /**
+     *
+     * @return 创建以来因为缓存已满而淘汰的page数量
+     */
+    long getEvictions();
+
+    /**
+     *
+     * @return 当前缓存的所有page
+     */
+    Iterator<Page> iterator();
+}
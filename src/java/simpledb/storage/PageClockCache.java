@@ -0,0 +1,166 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BufferPool的页表，采用CLOCK置换算法
+ * 页表是ConcurrentHashMap，命中时只设置frame的引用位，不修改任何共享链表，读者之间不会互相阻塞
+ * 未命中时的插入、淘汰以及删除由cache自身的锁串行化
+ */
+public class PageClockCache implements PageCache {
+
+    // Key: 缓存的page的id， Value: 存放该page的frame
+    private final ConcurrentHashMap<PageId, Frame> pageTable;
+
+    // 时钟环，frames[i]为null代表第i个frame空闲
+    private final Frame[] frames;
+
+    // 空闲frame的下标
+    private final Deque<Integer> freeSlots;
+
+    // 时钟指针，指向下一个要检查的frame
+    private int hand;
+
+    //允许缓存的最大page数量
+    private final int capacity;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Frame {
+        final PageId pid;
+        final int slot;
+        volatile Page page;
+        // 引用位，被访问时置1，时钟指针扫过时清0
+        volatile boolean referenced;
+
+        Frame(PageId pid, int slot, Page page) {
+            this.pid = pid;
+            this.slot = slot;
+            this.page = page;
+            this.referenced = true;
+        }
+    }
+
+    public PageClockCache(int capacity) {
+        this.capacity = capacity;
+        this.pageTable = new ConcurrentHashMap<>(capacity);
+        this.frames = new Frame[capacity];
+        this.freeSlots = new ArrayDeque<>(capacity);
+        for(int i = 0; i < capacity; i++) {
+            freeSlots.add(i);
+        }
+    }
+
+    @Override
+    public Page get(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        if(frame == null) {
+            return null;
+        }
+        // 已经置位时不再写，避免多个读线程反复写同一个缓存行
+        if(!frame.referenced) {
+            frame.referenced = true;
+        }
+        return frame.page;
+    }
+
+    @Override
+    public boolean isCached(PageId pid) {
+        return pageTable.containsKey(pid);
+    }
+
+    @Override
+    public synchronized Page putIfAbsent(PageId pid, Page page) throws DbException {
+        Frame frame = pageTable.get(pid);
+        if(frame != null) {
+            frame.referenced = true;
+            return frame.page;
+        }
+        insert(pid, page);
+        return page;
+    }
+
+    @Override
+    public synchronized void put(PageId pid, Page page) throws DbException {
+        Frame frame = pageTable.get(pid);
+        if(frame != null) {
+            frame.page = page;
+            frame.referenced = true;
+            return;
+        }
+        insert(pid, page);
+    }
+
+    @Override
+    public synchronized void remove(PageId pid) {
+        Frame frame = pageTable.remove(pid);
+        if(frame != null) {
+            frames[frame.slot] = null;
+            freeSlots.add(frame.slot);
+        }
+    }
+
+    private void insert(PageId pid, Page page) throws DbException {
+        int slot = freeSlots.isEmpty() ? evict() : freeSlots.poll();
+        Frame frame = new Frame(pid, slot, page);
+        frames[slot] = frame;
+        pageTable.put(pid, frame);
+    }
+
+    /**
+     * 时钟指针扫描frame：引用位为1的清0后跳过，脏页不能淘汰(NO STEAL)，遇到第一个引用位为0的干净page就淘汰
+     * 扫两圈还没有找到，说明所有page都是脏页
+     * @return 被淘汰的page空出的frame下标
+     */
+    private int evict() throws DbException {
+        for(int i = 0; i < 2 * capacity; i++) {
+            int slot = hand;
+            hand = (hand + 1) % capacity;
+            Frame frame = frames[slot];
+            if(frame.page.isDirty() != null) {
+                continue;
+            }
+            if(frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            pageTable.remove(frame.pid);
+            frames[slot] = null;
+            evictions.incrementAndGet();
+            return slot;
+        }
+        throw new DbException("BufferPool中所有page都是脏页，无法淘汰");
+    }
+
+    @Override
+    public int size() {
+        return pageTable.size();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public Iterator<Page> iterator() {
+        Iterator<Frame> it = pageTable.values().iterator();
+        return new Iterator<Page>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Page next() {
+                return it.next().page;
+            }
+        };
+    }
+}
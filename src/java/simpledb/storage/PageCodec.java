@@ -0,0 +1,33 @@
+package simpledb.storage;
+
+import java.io.IOException;
+
+/**
+ * PageCodec compresses the bytes of one page before they are written to a
+ * compressed HeapFile, and restores them when the page is read back.
+ * Implementations must be thread-safe.
+ *
+ * @see HeapFile#HeapFile(java.io.File, TupleDesc, PageCodec)
+ */
+public interface PageCodec {
+
+    /** Fast LZ77 codec in the style of the LZ4 block format. */
+    PageCodec LZ = new LzPageCodec();
+
+    /** Deflate (zlib) codec at the fastest compression level. */
+    PageCodec DEFLATE = new DeflatePageCodec(java.util.zip.Deflater.BEST_SPEED);
+
+    /**
+     * @return the compressed form of page; may be longer than page if its
+     *         contents do not compress
+     */
+    byte[] compress(byte[] page);
+
+    /**
+     * Restores the page compressed into src[0, srcLen) into page, which has
+     * exactly the length of the original page.
+     *
+     * @throws IOException if src is not valid output of compress
+     */
+    void decompress(byte[] src, int srcLen, byte[] page) throws IOException;
+}
@@ -0,0 +1,16 @@
+package simpledb.storage;
+
+/**
+ * Which page the BufferPool evicts when it is full. Dirty pages are never
+ * evicted (NO STEAL) under either policy.
+ * <ul>
+ * <li>CLOCK: approximates LRU with a reference bit per frame; hits take no
+ * lock. A large sequential scan pushes the whole working set out.</li>
+ * <li>TWO_Q: pages seen once stay in a small FIFO queue and only pages
+ * referenced again are promoted to the main LRU queue, so one-off scans do
+ * not evict frequently used pages. Every access takes the cache lock.</li>
+ * </ul>
+ */
+public enum PageReplacementPolicy {
+    CLOCK, TWO_Q
+}
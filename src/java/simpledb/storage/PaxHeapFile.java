@@ -0,0 +1,42 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxHeapFile is a HeapFile whose pages are stored in PAX layout, one
+ * minipage per column (see {@link PaxPage}). It is meant for analytical
+ * tables where queries read a few columns of many tuples: the values of a
+ * column are contiguous within each page, and fields that are never read
+ * are never decoded.
+ * <p>
+ * Pages are still read and cached whole, so the file holds the same number
+ * of pages as a HeapFile of the same table. Scans, inserts and deletes work
+ * as in HeapFile, and the table is registered with Catalog.addTable like
+ * any other DbFile.
+ *
+ * @see PaxPage
+ */
+public class PaxHeapFile extends HeapFile {
+
+    /**
+     * Constructs a PAX heap file backed by the specified file.
+     */
+    public PaxHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * Constructs a PAX heap file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public PaxHeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new PaxPage(pid, data);
+    }
+}
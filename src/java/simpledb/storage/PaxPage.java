@@ -0,0 +1,114 @@
+package simpledb.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxPage is a HeapPage stored in PAX (Partition Attributes Across) layout:
+ * the tuples of the page are split into one minipage per column, so the
+ * values of one column are contiguous. A scan that only reads a few columns
+ * of a wide table then touches a few dense runs of bytes instead of every
+ * tuple of the page.
+ * <p>
+ * The page holds as many tuples as a HeapPage of the same schema. It starts
+ * with the same header bitmap, followed by the minipages in column order;
+ * the value of column i for slot s is at
+ * <pre>
+ *     headerSize + numSlots * (sum of the sizes of columns 0..i-1) + s * (size of column i)
+ * </pre>
+ * Like HeapPage, tuples are views that decode a field from the page bytes
+ * the first time it is read.
+ *
+ * @see PaxHeapFile
+ */
+public class PaxPage extends HeapPage {
+
+    // 每一列的minipage在page中的起始位置
+    private final int[] columnStarts;
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a PaxPage from the bytes between the position and the limit of
+     * data; the page keeps a reference to data, which must not be modified
+     * afterwards.
+     */
+    public PaxPage(HeapPageId id, ByteBuffer data) {
+        super(id, data);
+        columnStarts = new int[td.numFields()];
+        int start = headerSize;
+        for(int i = 0; i < td.numFields(); i++) {
+            columnStarts[i] = start;
+            start += numSlots * td.getFieldType(i).getLen();
+        }
+    }
+
+    @Override
+    HeapPage newPage(byte[] pageData) throws IOException {
+        return new PaxPage(pid, pageData);
+    }
+
+    @Override
+    Tuple getTuple(int slotId) {
+        Tuple t = tuples[slotId];
+        if (t == null && isSlotUsed(slotId)) {
+            t = new Tuple(td, data, columnStarts, slotId, new RecordId(pid, slotId));
+        }
+        return t;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page in PAX
+     * layout.
+     *
+     * @see #PaxPage
+     */
+    @Override
+    public byte[] getPageData() {
+        byte[] pageData = new byte[BufferPool.getPageSize()];
+        // 先整体拷贝原始内容，没有被修改的tuple不需要再处理
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(Math.min(src.capacity(), pageData.length));
+        src.get(pageData, 0, src.remaining());
+        System.arraycopy(header, 0, pageData, 0, headerSize);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        for(int slot = 0; slot < numSlots; slot++) {
+            boolean used = isSlotUsed(slot);
+            Tuple t = tuples[slot];
+            if(used && t == null) {
+                continue;
+            }
+            for(int i = 0; i < td.numFields(); i++) {
+                int len = td.getFieldType(i).getLen();
+                int pos = columnStarts[i] + slot * len;
+                if(!used) {
+                    // 空slot(包括被删除的tuple)清零
+                    for(int j = pos; j < pos + len; j++) {
+                        pageData[j] = 0;
+                    }
+                    continue;
+                }
+                baos.reset();
+                try {
+                    t.getField(i).serialize(dos);
+                    dos.flush();
+                } catch (IOException e) {
+                    // this really shouldn't happen
+                    e.printStackTrace();
+                }
+                System.arraycopy(baos.toByteArray(), 0, pageData, pos, len);
+            }
+        }
+        return pageData;
+    }
+}
@@ -0,0 +1,39 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are {@link SlottedPage}s, so
+ * that tuples are stored as variable-length records. Tables with short
+ * strings take much less space than in a HeapFile, where every STRING_TYPE
+ * field occupies Type.STRING_LEN + 4 bytes.
+ * <p>
+ * Everything except the page format, including scans, inserts and deletes
+ * through the BufferPool, works as in HeapFile.
+ *
+ * @see SlottedPage
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public SlottedHeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    @Override
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) {
+        return new SlottedPage(pid, data);
+    }
+}
@@ -0,0 +1,386 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedPage stores variable-length records on one page of a
+ * {@link SlottedHeapFile}. Unlike HeapPage, a STRING_TYPE field only takes
+ * the bytes of its value plus a two byte length, instead of always
+ * Type.STRING_LEN + 4 bytes.
+ * <p>
+ * The page starts with a header of two unsigned shorts: the number of
+ * entries in the slot directory, and the offset where the record area
+ * begins (0 stands for the end of the page). The slot directory follows,
+ * one entry of two unsigned shorts per slot: the offset and the length of
+ * the record, offset 0 marking an empty slot. Records are packed from the
+ * end of the page towards the slot directory. Integers are stored in 4
+ * bytes, strings as a 2 byte length followed by one byte per character.
+ * <p>
+ * A page of all zeros is an empty page. Slot numbers, and therefore
+ * RecordIds, do not change when other tuples on the page are deleted or
+ * the page is compacted.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedPage implements TuplePage {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    // page的全部内容，插入删除直接修改这里，getPageData就是它的拷贝
+    private final byte[] data;
+    private final ByteBuffer buf;
+    private final int pageSize;
+
+    private int numSlots;
+    private int freeEnd;
+    // 所有有效记录的字节数，删除留下的空洞不算在内
+    private int liveBytes;
+    private TransactionId lastDirtyOperation;
+
+    // null表示setBeforeImage之后还没有被修改过，before image就是当前内容
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk.
+     */
+    public SlottedPage(HeapPageId id, byte[] data) {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a SlottedPage from the bytes between the position and the limit
+     * of data. The bytes are copied, so data may be reused or be read-only.
+     */
+    public SlottedPage(HeapPageId id, ByteBuffer data) {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pageSize = BufferPool.getPageSize();
+        if(pageSize > 0x10000) {
+            throw new IllegalStateException("SlottedPage最大支持64KB的page");
+        }
+        if(data.remaining() < pageSize) {
+            throw new IllegalArgumentException("page数据长度不足");
+        }
+        this.data = new byte[pageSize];
+        data.duplicate().get(this.data);
+        this.buf = ByteBuffer.wrap(this.data);
+
+        numSlots = getUnsignedShort(0);
+        freeEnd = getUnsignedShort(2);
+        if(freeEnd == 0) {
+            freeEnd = pageSize;
+        }
+        for(int i = 0; i < numSlots; i++) {
+            liveBytes += getRecordLength(i);
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the number of bytes the record of t takes on a SlottedPage,
+     *         not counting its slot directory entry
+     */
+    public static int getRecordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for(int i = 0; i < td.numFields(); i++) {
+            if(td.getFieldType(i) == Type.STRING_TYPE) {
+                size += 2 + ((StringField) t.getField(i)).getValue().length();
+            } else {
+                size += td.getFieldType(i).getLen();
+            }
+        }
+        return size;
+    }
+
+    private int getUnsignedShort(int offset) {
+        return buf.getShort(offset) & 0xffff;
+    }
+
+    private void putUnsignedShort(int offset, int value) {
+        buf.putShort(offset, (short) value);
+    }
+
+    private int getRecordOffset(int slot) {
+        return getUnsignedShort(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int getRecordLength(int slot) {
+        return getUnsignedShort(HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        putUnsignedShort(HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putUnsignedShort(HEADER_SIZE + slot * SLOT_SIZE + 2, length);
+    }
+
+    private void writeHeader() {
+        putUnsignedShort(0, numSlots);
+        putUnsignedShort(2, freeEnd == pageSize ? 0 : freeEnd);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized(oldDataLock)
+        {
+            oldDataRef = oldData;
+        }
+        return new SlottedPage(pid, oldDataRef == null ? getPageData() : oldDataRef);
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+            oldData = null;
+        }
+    }
+
+    private void saveBeforeImage() {
+        synchronized(oldDataLock)
+        {
+            if(oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    /**
+     * @return the number of entries in the slot directory, used or not
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots && getRecordOffset(i) != 0;
+    }
+
+    /**
+     * @return the number of bytes still available for records and slot
+     *         directory entries, including holes left by deleted records
+     */
+    public int getFreeSpace() {
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - liveBytes;
+    }
+
+    private int findEmptySlot() {
+        for(int i = 0; i < numSlots; i++) {
+            if(getRecordOffset(i) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        int needed = getRecordSize(t) + (findEmptySlot() < 0 ? SLOT_SIZE : 0);
+        return getFreeSpace() >= needed;
+    }
+
+    /**
+     * @return true if not even a record whose strings are all empty fits
+     *         into the page, together with a new slot if no slot is empty
+     */
+    public boolean isFull() {
+        int needed = getMinRecordSize(td) + (findEmptySlot() < 0 ? SLOT_SIZE : 0);
+        return getFreeSpace() < needed;
+    }
+
+    /**
+     * @return the number of bytes the smallest record of td takes, the one
+     *         whose strings are all empty
+     */
+    static int getMinRecordSize(TupleDesc td) {
+        int size = 0;
+        for(int i = 0; i < td.numFields(); i++) {
+            size += td.getFieldType(i) == Type.STRING_TYPE ? 2 : td.getFieldType(i).getLen();
+        }
+        return size;
+    }
+
+    /**
+     * Adds the specified tuple to the page, reusing the slot of a deleted
+     * tuple if there is one. The page is compacted if the free space is
+     * fragmented.
+     *
+     * @throws DbException if there is not enough room for the tuple, or the
+     *         tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if(!t.getTupleDesc().equals(td)) {
+            throw new DbException("TD匹配不上");
+        }
+        int size = getRecordSize(t);
+        int slot = findEmptySlot();
+        int newSlots = slot < 0 ? numSlots + 1 : numSlots;
+        if(getFreeSpace() - (newSlots - numSlots) * SLOT_SIZE < size) {
+            throw new DbException("这个Page满了");
+        }
+
+        saveBeforeImage();
+        if(freeEnd - (HEADER_SIZE + newSlots * SLOT_SIZE) < size) {
+            // 空闲空间足够但不连续，先把有效记录移到page末尾
+            compact();
+        }
+        if(slot < 0) {
+            slot = numSlots++;
+        }
+        freeEnd -= size;
+        writeRecord(t, freeEnd);
+        setSlot(slot, freeEnd, size);
+        liveBytes += size;
+        writeHeader();
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page. The space of its record is
+     * reclaimed the next time the page is compacted.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if(rid == null || !pid.equals(rid.getPageId()) || !isSlotUsed(rid.getTupleNumber())) {
+            throw new DbException("要删除的元组本来就为空");
+        }
+        saveBeforeImage();
+        int slot = rid.getTupleNumber();
+        liveBytes -= getRecordLength(slot);
+        setSlot(slot, 0, 0);
+        // 末尾的空slot没有被任何RecordId引用，可以直接从目录中去掉
+        while(numSlots > 0 && getRecordOffset(numSlots - 1) == 0) {
+            numSlots--;
+        }
+        if(liveBytes == 0) {
+            freeEnd = pageSize;
+        }
+        writeHeader();
+    }
+
+    /**
+     * 把所有有效记录紧凑地移到page末尾，slot号不变，只更新目录中的偏移
+     */
+    private void compact() {
+        byte[] packed = new byte[pageSize];
+        int end = pageSize;
+        for(int i = 0; i < numSlots; i++) {
+            int offset = getRecordOffset(i);
+            if(offset == 0) {
+                continue;
+            }
+            int length = getRecordLength(i);
+            end -= length;
+            System.arraycopy(data, offset, packed, end, length);
+            setSlot(i, end, length);
+        }
+        System.arraycopy(packed, end, data, end, pageSize - end);
+        freeEnd = end;
+        writeHeader();
+    }
+
+    private void writeRecord(Tuple t, int offset) {
+        int pos = offset;
+        for(int i = 0; i < td.numFields(); i++) {
+            if(td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(i)).getValue();
+                putUnsignedShort(pos, s.length());
+                pos += 2;
+                // 与StringField.serialize一致，每个字符只保存低8位
+                for(int j = 0; j < s.length(); j++) {
+                    data[pos++] = (byte) s.charAt(j);
+                }
+            } else {
+                buf.putInt(pos, t.getInt(i));
+                pos += 4;
+            }
+        }
+    }
+
+    private Tuple readRecord(int slot) {
+        Tuple t = new Tuple(td);
+        int pos = getRecordOffset(slot);
+        for(int i = 0; i < td.numFields(); i++) {
+            if(td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = getUnsignedShort(pos);
+                t.setField(i, new StringField(new String(data, pos + 2, len), Type.STRING_LEN));
+                pos += 2 + len;
+            } else {
+                t.setField(i, new IntField(buf.getInt(pos)));
+                pos += 4;
+            }
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        lastDirtyOperation = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return lastDirtyOperation;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int idx = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while(from < numSlots && getRecordOffset(from) == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if(!hasNext()) throw new NoSuchElementException("迭代越界");
+                Tuple t = readRecord(idx);
+                idx = nextUsed(idx + 1);
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("tuple不允许删除");
+            }
+        };
+    }
+}
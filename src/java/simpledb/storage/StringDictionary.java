@@ -0,0 +1,172 @@
+package simpledb.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字符串到整数编码的字典，DictionaryHeapFile用它把低基数的字符串列存成编码
+ *
+ * 编码从0开始按加入顺序分配，只增不删，同一个字符串的编码永远不变，
+ * 所以同一个字典的两个编码相等当且仅当字符串相等
+ * 字典保存在文件中，每加入一个新字符串就追加到文件末尾并force到磁盘，encode返回之后才有page引用这个编码，
+ * 所以崩溃后磁盘上的page不会引用字典中没有的编码
+ * 事务回滚不会删除已经加入的字符串，只是多了一个没有被引用的编码
+ * 崩溃时没写完的最后一条记录在下次打开时截掉，它的编码还没有返回过
+ */
+public class StringDictionary implements Closeable {
+
+    private final File file;
+
+    // 追加新字符串的channel，第一次encode新字符串时打开，关闭后再次使用时重新打开
+    private FileChannel channel;
+    // 文件中完整记录的长度，新记录写在这里
+    private long length;
+
+    // 下标为编码，只在加锁时替换为更长的数组，decode不需要加锁
+    private volatile String[] values;
+    private int size;
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    /**
+     * 打开字典文件，文件不存在时创建一个空字典
+     */
+    public StringDictionary(File file) throws IOException {
+        this.file = file;
+        this.values = new String[16];
+        if(file.exists()) {
+            // 字典只用于低基数的列，整个读入内存
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
+            DataInputStream in = new DataInputStream(bin);
+            while(true) {
+                String s;
+                try {
+                    s = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                add(s);
+                length = bytes.length - bin.available();
+            }
+            if(length < bytes.length) {
+                // 崩溃时没有写完的记录
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(length);
+                }
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 字典中字符串的数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return s的编码，s不在字典中时返回-1
+     */
+    public int lookup(String s) {
+        Integer code = codes.get(s);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @return s的编码，s不在字典中时把它加入字典并写入文件
+     */
+    public int encode(String s) throws IOException {
+        Integer code = codes.get(s);
+        if(code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(s);
+            if(code != null) {
+                return code;
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            new DataOutputStream(record).writeUTF(s);
+            ByteBuffer buf = ByteBuffer.wrap(record.toByteArray());
+            FileChannel ch = getChannel();
+            try {
+                while(buf.hasRemaining()) {
+                    ch.write(buf, length + buf.position());
+                }
+                // 编码返回之后就可能写进page，page刷盘之前字典里必须已经有它
+                ch.force(false);
+            } catch (IOException e) {
+                // 截掉写了一半的记录，否则下一条更短的记录后面会留下它的残余
+                try {
+                    if(ch.isOpen()) {
+                        ch.truncate(length);
+                    }
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            length += buf.limit();
+            return add(s);
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+        // 线程在IO时被中断会关闭channel，发现关闭了就重新打开
+        if(channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /**
+     * 关闭追加新字符串的channel，之后再encode新字符串时重新打开
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return 编码对应的字符串，返回的是字典中保存的同一个String对象
+     * @throws IllegalArgumentException 编码不在字典中
+     */
+    public String decode(int code) {
+        String[] vals = values;
+        if(code < 0 || code >= vals.length || vals[code] == null) {
+            throw new IllegalArgumentException("字典中没有编码" + code);
+        }
+        return vals[code];
+    }
+
+    private synchronized int add(String s) {
+        String[] vals = values;
+        if(size == vals.length) {
+            vals = Arrays.copyOf(vals, size * 2);
+        }
+        vals[size] = s;
+        // 先写入数组再发布，其他线程从codes中拿到编码时一定能decode
+        values = vals;
+        codes.put(s, size);
+        return size++;
+    }
+}
@@ -1,6 +1,11 @@
 package simpledb.storage;
 
+import simpledb.common.Type;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -21,14 +26,53 @@ public class Tuple implements Serializable {
      *            the schema of this tuple. It must be a valid TupleDesc
      *            instance with at least one field.
      */
-    private Field[] fields;
+    private final Field[] fields;
     private TupleDesc tupleDesc;
     private RecordId recordId;
 
+    // 不为null时tuple是page字节上的视图，fields[i]为null代表第i个字段还没有从source中解析
+    private transient final ByteBuffer source;
+    private transient final int sourceOffset;
+    // 不为null时source按列存储：第i个字段在columnStarts[i] + sourceOffset * 字段长度处，sourceOffset是slot号
+    private transient final int[] columnStarts;
+
     public Tuple(TupleDesc td) {
         // done
         this.tupleDesc = td;
         fields = new Field[td.numFields()];
+        this.source = null;
+        this.sourceOffset = 0;
+        this.columnStarts = null;
+    }
+
+    /**
+     * 创建page字节上的tuple视图，字段在第一次getField时才按TupleDesc中的偏移从source解析
+     * source中的这段字节在tuple的生命周期内不能被修改
+     *
+     * @param offset tuple在source中的起始位置
+     */
+    Tuple(TupleDesc td, ByteBuffer source, int offset, RecordId rid) {
+        this.tupleDesc = td;
+        this.fields = new Field[td.numFields()];
+        this.source = source;
+        this.sourceOffset = offset;
+        this.columnStarts = null;
+        this.recordId = rid;
+    }
+
+    /**
+     * 创建按列存储的page上的tuple视图，每一列的值在source中连续存放
+     *
+     * @param columnStarts 每一列第一个值在source中的位置，由同一个page的所有tuple共享，不能被修改
+     * @param slot tuple在page中的slot号
+     */
+    Tuple(TupleDesc td, ByteBuffer source, int[] columnStarts, int slot, RecordId rid) {
+        this.tupleDesc = td;
+        this.fields = new Field[td.numFields()];
+        this.source = source;
+        this.sourceOffset = slot;
+        this.columnStarts = columnStarts;
+        this.recordId = rid;
     }
 
     /**
@@ -81,7 +125,55 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // done
-        return fields[i];
+        Field f = fields[i];
+        if(f == null && source != null) {
+            // 多个线程同时解析得到的值相同，Field是不可变的，不需要加锁
+            f = tupleDesc.getFieldType(i).parse(source, getSourceOffset(i));
+            fields[i] = f;
+        }
+        return f;
+    }
+
+    /**
+     * 读取INT_TYPE字段的值，不创建IntField
+     * 字段还没有解析时直接从source中读取，已经解析或者被setField设置过时取IntField中的值
+     *
+     * @param i
+     *            field index to return. Must be a valid index of an INT_TYPE field.
+     * @throws IllegalArgumentException 第i个字段不是INT_TYPE
+     */
+    public int getInt(int i) {
+        Field f = fields[i];
+        if(f == null && source != null) {
+            if(tupleDesc.getFieldType(i) != Type.INT_TYPE) {
+                throw new IllegalArgumentException("第" + i + "个字段不是INT_TYPE");
+            }
+            return source.getInt(getSourceOffset(i));
+        }
+        if(!(f instanceof IntField)) {
+            throw new IllegalArgumentException("第" + i + "个字段不是INT_TYPE");
+        }
+        return ((IntField) f).getValue();
+    }
+
+    /**
+     * @return 第i个字段在source中的位置
+     */
+    private int getSourceOffset(int i) {
+        if(columnStarts != null) {
+            return columnStarts[i] + sourceOffset * tupleDesc.getFieldType(i).getLen();
+        }
+        return sourceOffset + tupleDesc.getOffset(i);
+    }
+
+    /**
+     * 序列化之前解析所有字段，source不会被序列化
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        for(int i = 0; i < fields.length; i++) {
+            getField(i);
+        }
+        out.defaultWriteObject();
     }
 
     /**
@@ -98,7 +190,7 @@ public class Tuple implements Serializable {
 
         StringBuilder sb = new StringBuilder();
         for(int i = 0; i < fields.length; i++) {
-            sb.append(fields[i].toString());
+            sb.append(getField(i).toString());
             if(i < fields.length - 1) {
                 sb.append(" ");
             }
@@ -128,7 +220,7 @@ public class Tuple implements Serializable {
         public Field next() {
             if(hasNext()) {
                 idx++;
-                return fields[idx];
+                return getField(idx);
             } else {
                 throw new NoSuchElementException("迭代越界");
             }
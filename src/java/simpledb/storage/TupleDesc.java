@@ -13,6 +13,9 @@ public class TupleDesc implements Serializable {
     private TDItem[] tdAr;
     private int numFields;
 
+    // offsets[i]为第i个字段在序列化后的tuple中的字节偏移，第一次使用时计算
+    private transient volatile int[] offsets;
+
     /**
      * A help class to facilitate organizing the information of each field
      * TDItem是组织每个字段信息的辅助类
@@ -147,6 +150,7 @@ public class TupleDesc implements Serializable {
         if(tdItems == null || tdItems.length == 0) {
             throw new IllegalArgumentException("tdItems数组不合法");
         }
+        this.numFields = tdItems.length;
         this.tdAr = tdItems;
     }
 
@@ -226,6 +230,10 @@ public class TupleDesc implements Serializable {
      */
     public int getSize() {
         // done
+        int[] offs = offsets;
+        if(offs != null) {
+            return offs[offs.length - 1];
+        }
 
         int size = 0;
         for(int i = 0; i < tdAr.length; i++){
@@ -235,6 +243,23 @@ public class TupleDesc implements Serializable {
 
     }
 
+    /**
+     * @return the offset (in bytes) of the ith field from the start of a
+     *         serialized tuple of this TupleDesc
+     */
+    public int getOffset(int i) {
+        int[] offs = offsets;
+        if(offs == null) {
+            // 多个线程同时计算得到的结果相同，不需要加锁，volatile保证其他线程看到完整的数组
+            offs = new int[tdAr.length + 1];
+            for(int j = 0; j < tdAr.length; j++) {
+                offs[j + 1] = offs[j] + tdAr[j].fieldType.getLen();
+            }
+            offsets = offs;
+        }
+        return offs[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
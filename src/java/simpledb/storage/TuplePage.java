@@ -0,0 +1,48 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is a Page that stores an unordered set of tuples, such as the
+ * pages of a HeapFile. HeapFile only accesses its pages through this
+ * interface, so subclasses of HeapFile can use a different page format.
+ *
+ * @see HeapPage
+ * @see HeapFile#createPage
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * @return true if t can be inserted into this page
+     */
+    boolean hasRoomFor(Tuple t);
+
+    /**
+     * @return true if no tuple fits into this page, not even the smallest
+     *         one the TupleDesc of the page allows
+     */
+    boolean isFull();
+
+    /**
+     * Adds the specified tuple to the page; the tuple should be updated to
+     * reflect that it is now stored on this page.
+     *
+     * @throws DbException if there is no room for the tuple or its TupleDesc
+     *         does not match the page
+     */
+    void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not stored on this page
+     */
+    void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over all tuples on this page
+     */
+    Iterator<Tuple> iterator();
+}
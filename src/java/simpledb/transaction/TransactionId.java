@@ -12,15 +12,45 @@ public class TransactionId implements Serializable {
 
     static final AtomicLong counter = new AtomicLong(0);
     final long myid;
+    // 事务第一次启动时的id，重启的事务沿用它，用于比较事务的新旧
+    final long timestamp;
 
     public TransactionId() {
         myid = counter.getAndIncrement();
+        timestamp = myid;
+    }
+
+    /**
+     * Creates the id of a transaction that restarts an aborted transaction.
+     * The new id is unique, but keeps the timestamp of the aborted one, so
+     * the restarted transaction is not younger than it was the first time.
+     *
+     * @param restartOf the id of the aborted transaction
+     */
+    public TransactionId(TransactionId restartOf) {
+        myid = counter.getAndIncrement();
+        timestamp = restartOf.timestamp;
     }
 
     public long getId() {
         return myid;
     }
 
+    /**
+     * @return the id of the first start of this transaction; smaller is older
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return true if this transaction is older than other: it has a smaller
+     *         timestamp, or the same timestamp and a smaller id
+     */
+    public boolean isOlderThan(TransactionId other) {
+        return timestamp != other.timestamp ? timestamp < other.timestamp : myid < other.myid;
+    }
+
     @Override
 	public boolean equals(Object obj) {
 		if (this == obj)
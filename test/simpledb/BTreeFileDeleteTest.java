@@ -29,7 +29,7 @@ public class BTreeFileDeleteTest extends SimpleDbTestBase {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		Database.getBufferPool().transactionComplete(tid);
 	}
 
@@ -34,7 +34,7 @@ public class BTreeFileReadTest extends SimpleDbTestBase {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		Database.getBufferPool().transactionComplete(tid);
 	}
 
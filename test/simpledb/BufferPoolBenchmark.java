@@ -0,0 +1,92 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.BufferPoolStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapFileEncoder;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多线程下BufferPool.getPage的吞吐量测试
+ * 每个线程重复执行只读事务：依次读取table的每一页，然后提交
+ * 缓存足够大时全部命中，测的是页表的并发性能；缓存小于table时每次扫描都会淘汰page
+ *
+ * 用法: java simpledb.BufferPoolBenchmark [tablePages] [bufferPages] [secondsPerRun]
+ */
+public class BufferPoolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int bufferPages = args.length > 1 ? Integer.parseInt(args[1]) : BufferPool.DEFAULT_PAGES;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 3;
+
+        HeapFile table = createTable(tablePages);
+        System.out.println("threads\ttxn/s\tgetPage/s\thit%\tevictions");
+        for(int threads = 1; threads <= 16; threads *= 2) {
+            BufferPool bufferPool = Database.resetBufferPool(bufferPages);
+            AtomicLong txns = run(table, threads, tablePages, seconds * 1000);
+            double txnPerSec = txns.get() * 1000.0 / (seconds * 1000);
+            BufferPoolStats stats = bufferPool.getStats();
+            System.out.printf("%d\t%.0f\t%.0f\t%.2f\t%d%n", threads, txnPerSec, txnPerSec * tablePages,
+                    stats.getHitRatio() * 100, stats.getEvictions());
+        }
+    }
+
+    static HeapFile createTable(int numPages) throws IOException {
+        int tuplesPerPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        List<List<Integer>> tuples = new ArrayList<>();
+        for(int i = 0; i < numPages * tuplesPerPage; i++) {
+            List<Integer> tuple = new ArrayList<>();
+            tuple.add(i);
+            tuple.add(i % 100);
+            tuples.add(tuple);
+        }
+        File f = File.createTempFile("bufferpool-bench", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        return Utility.openHeapFile(2, f);
+    }
+
+    private static AtomicLong run(HeapFile table, int threads, int tablePages, long millis)
+            throws InterruptedException {
+        AtomicLong txns = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + millis;
+        for(int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    while(System.currentTimeMillis() < deadline) {
+                        TransactionId tid = new TransactionId();
+                        for(int pgNo = 0; pgNo < tablePages; pgNo++) {
+                            Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), pgNo), Permissions.READ_ONLY);
+                        }
+                        Database.getBufferPool().transactionComplete(tid);
+                        txns.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        return txns;
+    }
+}
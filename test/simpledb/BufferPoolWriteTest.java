@@ -5,7 +5,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -55,6 +58,41 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	}
     }
     
+    // class whose reads block on latches, to interleave a prefetch with a
+    // transaction that reads, updates and flushes the same page
+    static class HeapFileBlockingReads extends HeapFile {
+
+        final CountDownLatch transactionReading = new CountDownLatch(1);
+        final CountDownLatch prefetchRead = new CountDownLatch(1);
+        final CountDownLatch flushed = new CountDownLatch(1);
+
+        public HeapFileBlockingReads(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            try {
+                if (!Thread.currentThread().getName().equals("page-prefetcher")) {
+                    // the transaction's read starts before the prefetch is submitted
+                    // and returns after the prefetch has read the page
+                    transactionReading.countDown();
+                    prefetchRead.await(5, TimeUnit.SECONDS);
+                    return super.readPage(pid);
+                }
+                Page p = super.readPage(pid);
+                prefetchRead.countDown();
+                // hold the old copy until the transaction has flushed the page;
+                // a BufferPool that waits for the prefetch before flushing
+                // gives up after the timeout
+                flushed.await(500, TimeUnit.MILLISECONDS);
+                return p;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     /**
      * Set up initial resources for each unit test.
      */
@@ -63,7 +101,7 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
         tid = new TransactionId();
     }
 
-    @After public void tearDown() {
+    @After public void tearDown() throws Exception {
         Database.getBufferPool().transactionComplete(tid);
     }
 
@@ -140,6 +178,52 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	assertEquals(10, count);
     }
 
+    /**
+     * A prefetch that read a page before a transaction flushed its update
+     * must not install the old copy after the page is evicted.
+     */
+    @Test public void prefetchDoesNotInstallStalePage() throws Exception {
+        Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        HeapFileBlockingReads hf = new HeapFileBlockingReads(empty.getFile(), empty.getTupleDesc());
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        Thread prefetcher = new Thread(() -> {
+            try {
+                hf.transactionReading.await();
+                Database.getBufferPool().prefetchPage(pid);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        prefetcher.start();
+
+        TransactionId writer = new TransactionId();
+        HeapPage p = (HeapPage) Database.getBufferPool().getPage(writer, pid, Permissions.READ_WRITE);
+        p.insertTuple(Utility.getHeapTuple(2, 2));
+        p.markDirty(true, writer);
+        Database.getBufferPool().transactionComplete(writer);
+        Database.getBufferPool().discardPage(pid);
+        hf.flushed.countDown();
+        prefetcher.join();
+
+        // wait until the prefetch has installed its copy, if it does
+        for (int i = 0; i < 100 && Database.getBufferPool().getStats().getPrefetches() == 0; i++) {
+            Thread.sleep(10);
+        }
+        tid = new TransactionId();
+        p = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        int count = 0;
+        Iterator<Tuple> it = p.iterator();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
     /**
      * JUnit suite target
      */
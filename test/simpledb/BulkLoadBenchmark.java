@@ -0,0 +1,78 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.Iterator;
+
+/**
+ * 比较逐条insertTuple和HeapFile.bulkLoad向空table装入数据的吞吐量
+ * 逐条插入时每个事务插入txnRows条后提交(NO STEAL下事务修改的page都要留在缓存中)，bulkLoad一次装入全部数据
+ * bulkLoad会把page的前后镜像写进当前目录下的日志文件
+ *
+ * 用法: java simpledb.BulkLoadBenchmark [rows] [txnRows]
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int txnRows = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        Database.resetBufferPool(txnRows / 100 + 100);
+        System.out.println("method\tpages\tms\trows/s");
+
+        HeapFile inserted = emptyTable();
+        long start = System.nanoTime();
+        for(int i = 0; i < rows; i += txnRows) {
+            TransactionId tid = new TransactionId();
+            for(int j = i; j < Math.min(rows, i + txnRows); j++) {
+                Database.getBufferPool().insertTuple(tid, inserted.getId(), tuple(inserted.getTupleDesc(), j));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        report("insert", inserted, rows, start);
+
+        HeapFile loaded = emptyTable();
+        start = System.nanoTime();
+        TransactionId tid = new TransactionId();
+        loaded.bulkLoad(tid, new Iterator<Tuple>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public Tuple next() {
+                return tuple(loaded.getTupleDesc(), next++);
+            }
+        });
+        Database.getBufferPool().transactionComplete(tid);
+        report("bulkLoad", loaded, rows, start);
+    }
+
+    private static Tuple tuple(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new IntField(i % 100));
+        return t;
+    }
+
+    private static HeapFile emptyTable() throws Exception {
+        File f = File.createTempFile("bulkload-bench", ".dat");
+        f.deleteOnExit();
+        return Utility.openHeapFile(2, f);
+    }
+
+    private static void report(String method, HeapFile table, int rows, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s\t%d\t%.0f\t%.0f%n", method, table.numPages(), seconds * 1000, rows / seconds);
+    }
+}
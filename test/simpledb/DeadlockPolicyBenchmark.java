@@ -0,0 +1,96 @@
+package simpledb;
+
+import simpledb.common.DeadlockPolicy;
+import simpledb.common.LockManager;
+import simpledb.common.Permissions;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 比较三种死锁处理策略的吞吐量和尾延迟
+ * 负载与DeadlockTest相同：事务先读锁一页，再申请另一页的写锁，page很少，所以经常互相等待形成死锁
+ * 被回滚的事务会用原来的时间戳重试，延迟从第一次开始到最终提交为止
+ *
+ * 用法: java simpledb.DeadlockPolicyBenchmark [threads] [pages] [secondsPerRun]
+ */
+public class DeadlockPolicyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 3;
+
+        System.out.println("policy\tcommits/s\taborts\tp50(ms)\tp99(ms)\tmax(ms)");
+        for(DeadlockPolicy policy : DeadlockPolicy.values()) {
+            run(policy, threads, pages, seconds * 1000);
+        }
+    }
+
+    private static void run(DeadlockPolicy policy, int threads, int pages, long millis) throws InterruptedException {
+        LockManager lockManager = new LockManager(policy);
+        AtomicLong aborts = new AtomicLong();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + millis;
+        for(int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    while(System.currentTimeMillis() < deadline) {
+                        HeapPageId p1 = new HeapPageId(1, random.nextInt(pages));
+                        HeapPageId p2 = new HeapPageId(1, random.nextInt(pages));
+                        long begin = System.nanoTime();
+                        TransactionId tid = null;
+                        while(true) {
+                            // 重试时沿用第一次的时间戳，否则重试的事务总是最年轻的
+                            tid = tid == null ? new TransactionId() : new TransactionId(tid);
+                            try {
+                                lockManager.acquireLock(tid, p1, Permissions.READ_ONLY);
+                                lockManager.acquireLock(tid, p2, Permissions.READ_WRITE);
+                                lockManager.releaseTransactionLocks(tid);
+                                break;
+                            } catch (TransactionAbortedException e) {
+                                lockManager.releaseTransactionLocks(tid);
+                                aborts.incrementAndGet();
+                            }
+                        }
+                        latencies.add(System.nanoTime() - begin);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        if(sorted.isEmpty()) {
+            System.out.printf("%s\t0\t%d\t-\t-\t-%n", policy, aborts.get());
+            return;
+        }
+        System.out.printf("%s\t%.0f\t%d\t%.3f\t%.3f\t%.3f%n", policy,
+                sorted.size() * 1000.0 / millis, aborts.get(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int idx = (int) Math.min(sorted.size() - 1, Math.round(p * (sorted.size() - 1)));
+        return sorted.get(idx) / 1e6;
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.common.DeadlockPolicy;
+import simpledb.common.LockManager;
+import simpledb.common.Permissions;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class DeadlockPolicyTest {
+
+    private PageId p0, p1;
+    private LockManager lockManager;
+
+    @Before public void setUp() {
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        lockManager = new LockManager(DeadlockPolicy.WAIT_DIE);
+    }
+
+    /**
+     * A restarted transaction keeps the timestamp of the first start.
+     */
+    @Test public void restartKeepsTimestamp() {
+        TransactionId first = new TransactionId();
+        TransactionId other = new TransactionId();
+        TransactionId restart = new TransactionId(first);
+
+        assertNotEquals(first, restart);
+        assertEquals(first.getTimestamp(), restart.getTimestamp());
+        assertTrue(restart.isOlderThan(other));
+        assertFalse(other.isOlderThan(restart));
+        // 同一个时间戳的多次启动按id排序
+        assertTrue(first.isOlderThan(restart));
+        assertFalse(restart.isOlderThan(first));
+    }
+
+    /**
+     * Under WAIT_DIE a younger requester aborts instead of waiting for an
+     * older holder.
+     */
+    @Test(expected = TransactionAbortedException.class)
+    public void waitDieAbortsYounger() throws Exception {
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        lockManager.acquireLock(older, p0, Permissions.READ_WRITE);
+        lockManager.acquireLock(younger, p0, Permissions.READ_WRITE);
+    }
+
+    /**
+     * A transaction that died and restarted with its old timestamp is still
+     * older than transactions that started after it, so they die when they
+     * conflict with it instead of the other way around.
+     */
+    @Test public void restartedTransactionStaysOlder() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        TransactionId t3 = new TransactionId();
+
+        lockManager.acquireLock(t1, p0, Permissions.READ_WRITE);
+        try {
+            lockManager.acquireLock(t2, p0, Permissions.READ_WRITE);
+            fail("t2 is younger than t1 and should have died");
+        } catch (TransactionAbortedException expected) {
+            lockManager.releaseTransactionLocks(t2);
+        }
+
+        TransactionId t2Restart = new TransactionId(t2);
+        lockManager.acquireLock(t2Restart, p1, Permissions.READ_WRITE);
+        try {
+            lockManager.acquireLock(t3, p1, Permissions.READ_WRITE);
+            fail("t3 is younger than the restarted t2 and should have died");
+        } catch (TransactionAbortedException expected) {
+            lockManager.releaseTransactionLocks(t3);
+        }
+        assertTrue(lockManager.holdsLock(t2Restart, p1));
+        assertFalse(lockManager.holdsLock(t3, p1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DeadlockPolicyTest.class);
+    }
+}
@@ -0,0 +1,110 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.storage.DictionaryHeapFile;
+import simpledb.storage.DictionaryPage;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TuplePage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 比较低基数字符串列(int id, string region)不编码和字典编码时的文件大小，以及等值过滤的吞吐量
+ * page全部读入内存后再扫描，测的是解析tuple和比较字符串/编码的开销，不包括I/O
+ *
+ * 用法: java simpledb.DictionaryEncodingBenchmark [rows] [distinctValues] [runs]
+ */
+public class DictionaryEncodingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "region"});
+        HeapFile plain = new HeapFile(tempFile(), td);
+        File dictFile = tempFile();
+        new File(dictFile.getPath() + ".dict").deleteOnExit();
+        HeapFile encoded = new DictionaryHeapFile(dictFile, td, 1);
+        Database.getCatalog().addTable(plain, "plain");
+        Database.getCatalog().addTable(encoded, "encoded");
+        TuplePage[] plainPages = writeTable(plain, td, rows, distinct);
+        TuplePage[] encodedPages = writeTable(encoded, td, rows, distinct);
+
+        Predicate predicate = new Predicate(1, Predicate.Op.EQUALS, new StringField(region(distinct / 2), Type.STRING_LEN));
+        System.out.println("format\trun\tMB\tMtuples/s\tmatches");
+        for(int run = 0; run < runs; run++) {
+            for(TuplePage[] pages : new TuplePage[][]{plainPages, encodedPages}) {
+                long start = System.nanoTime();
+                long matches = 0;
+                for(TuplePage page : pages) {
+                    Iterator<Tuple> it = page.iterator();
+                    while(it.hasNext()) {
+                        if(predicate.filter(it.next())) {
+                            matches++;
+                        }
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                HeapFile table = pages == plainPages ? plain : encoded;
+                System.out.printf("%s\t%d\t%.1f\t%.1f\t%d%n", pages == plainPages ? "plain" : "dictionary", run,
+                        table.getFile().length() / (1024.0 * 1024), rows / seconds / 1e6, matches);
+            }
+        }
+    }
+
+    private static String region(int i) {
+        return "region-" + i;
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("dictionary-bench", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /**
+     * 逐页填满后写入文件，再按文件的格式读回所有page
+     */
+    private static TuplePage[] writeTable(HeapFile table, TupleDesc td, int rows, int distinct) throws IOException {
+        int pgNo = 0;
+        TuplePage page = newPage(table, pgNo);
+        for(int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(region(i % distinct), Type.STRING_LEN));
+            if(!page.hasRoomFor(t)) {
+                table.writePage(page);
+                page = newPage(table, ++pgNo);
+            }
+            try {
+                page.insertTuple(t);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        table.writePage(page);
+
+        TuplePage[] pages = new TuplePage[pgNo + 1];
+        for(int i = 0; i <= pgNo; i++) {
+            pages[i] = (TuplePage) table.readPage(new HeapPageId(table.getId(), i));
+        }
+        return pages;
+    }
+
+    private static TuplePage newPage(HeapFile table, int pgNo) throws IOException {
+        HeapPageId pid = new HeapPageId(table.getId(), pgNo);
+        byte[] empty = HeapPage.createEmptyPageData();
+        return table instanceof DictionaryHeapFile ? new DictionaryPage(pid, empty) : new HeapPage(pid, empty);
+    }
+}
@@ -0,0 +1,248 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class DictionaryPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "city", "note"});
+    private static final String[] CITIES = {"北京", "Boston", "Cambridge", "", "Zürich"};
+
+    private File f;
+    private File dict;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void createFiles() throws Exception {
+        f = File.createTempFile("dictionary", ".dat");
+        dict = new File(f.getPath() + ".dict");
+        f.deleteOnExit();
+        dict.deleteOnExit();
+    }
+
+    private static Tuple tuple(int id) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(CITIES[id % CITIES.length], Type.STRING_LEN));
+        t.setField(2, new StringField("note " + id, Type.STRING_LEN));
+        return t;
+    }
+
+    private DictionaryHeapFile openFile() {
+        DictionaryHeapFile hf = new DictionaryHeapFile(f, TD, 1);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /**
+     * Unit test for StringDictionary.encode(), lookup() and decode(), and
+     * for reading the dictionary back from its file.
+     */
+    @Test public void encodeAndReopen() throws Exception {
+        StringDictionary dictionary = new StringDictionary(dict);
+        assertEquals(0, dictionary.size());
+        for (int i = 0; i < CITIES.length; i++) {
+            assertEquals(-1, dictionary.lookup(CITIES[i]));
+            assertEquals(i, dictionary.encode(CITIES[i]));
+        }
+        for (int i = 0; i < CITIES.length; i++) {
+            assertEquals(i, dictionary.encode(CITIES[i]));
+            assertEquals(i, dictionary.lookup(CITIES[i]));
+            assertEquals(CITIES[i], dictionary.decode(i));
+        }
+        assertEquals(CITIES.length, dictionary.size());
+
+        StringDictionary reopened = new StringDictionary(dict);
+        assertEquals(CITIES.length, reopened.size());
+        for (int i = 0; i < CITIES.length; i++) {
+            assertEquals(i, reopened.lookup(CITIES[i]));
+            assertEquals(CITIES[i], reopened.decode(i));
+        }
+        // new values get the next code after a reopen
+        assertEquals(CITIES.length, reopened.encode("Paris"));
+        assertEquals(CITIES.length + 1, new StringDictionary(dict).size());
+    }
+
+    /**
+     * A record torn by a crash at the end of the dictionary file is dropped
+     * on reopen, and the next value is appended in its place.
+     */
+    @Test public void tornRecordIsDropped() throws Exception {
+        StringDictionary dictionary = new StringDictionary(dict);
+        for (String city : CITIES) {
+            dictionary.encode(city);
+        }
+        dictionary.close();
+        long length = dict.length();
+        try (FileOutputStream out = new FileOutputStream(dict, true)) {
+            // the length of "Paris" and only part of its bytes
+            out.write(new byte[]{0, 5, 'P', 'a'});
+        }
+
+        StringDictionary reopened = new StringDictionary(dict);
+        assertEquals(CITIES.length, reopened.size());
+        assertEquals(length, dict.length());
+        assertEquals(CITIES.length, reopened.encode("Paris"));
+        reopened.close();
+
+        StringDictionary again = new StringDictionary(dict);
+        assertEquals(CITIES.length + 1, again.size());
+        assertEquals("Paris", again.decode(CITIES.length));
+        assertEquals(CITIES[CITIES.length - 1], again.decode(CITIES.length - 1));
+        again.close();
+    }
+
+    /**
+     * Unit test for StringDictionary.decode() with a code not in the dictionary
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void decodeUnknownCode() throws Exception {
+        StringDictionary dictionary = new StringDictionary(dict);
+        dictionary.encode("a");
+        dictionary.decode(1);
+    }
+
+    /**
+     * Only STRING_TYPE columns can be encoded.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void encodeIntColumn() {
+        new DictionaryHeapFile(f, TD, 0);
+    }
+
+    /**
+     * Unit test for DictionaryPage.insertTuple() and DictionaryPage.iterator():
+     * the encoded column is stored as a code, and tuples read back from the
+     * page data carry EncodedStringFields with the same values.
+     */
+    @Test public void insertAndReadBack() throws Exception {
+        DictionaryHeapFile hf = openFile();
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        DictionaryPage page = new DictionaryPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; page.hasRoomFor(tuple(i)); i++) {
+            Tuple t = tuple(i);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            inserted.add(t);
+        }
+        assertEquals(CITIES.length, hf.getDictionary().size());
+        // the page is laid out by the physical TupleDesc, which fits more
+        // tuples than the logical one
+        int tupleSize = hf.getPhysicalTupleDesc().getSize();
+        int numSlots = BufferPool.getPageSize() * 8 / (tupleSize * 8 + 1);
+        assertEquals(numSlots, inserted.size());
+        assertTrue(numSlots > BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1));
+
+        byte[] data = page.getPageData();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int headerSize = (numSlots + 7) / 8;
+        Iterator<Tuple> it = new DictionaryPage(pid, data).iterator();
+        for (Tuple t : inserted) {
+            int slot = t.getRecordId().getTupleNumber();
+            int code = buf.getInt(headerSize + slot * tupleSize + Type.INT_TYPE.getLen());
+            assertEquals(hf.getDictionary().lookup(CITIES[t.getInt(0) % CITIES.length]), code);
+
+            Tuple read = it.next();
+            assertTrue(TestUtil.compareTuples(t, read));
+            assertEquals(t.getRecordId(), read.getRecordId());
+            assertTrue(read.getField(1) instanceof EncodedStringField);
+            assertEquals(code, ((EncodedStringField) read.getField(1)).getCode());
+            assertFalse(read.getField(2) instanceof EncodedStringField);
+        }
+        assertFalse(it.hasNext());
+
+        page.deleteTuple(inserted.get(0));
+        Tuple first = new DictionaryPage(pid, page.getPageData()).iterator().next();
+        assertEquals(new RecordId(pid, 1), first.getRecordId());
+    }
+
+    /**
+     * Unit test for DictionaryPage.insertTuple() with a tuple of another TupleDesc
+     */
+    @Test(expected=DbException.class)
+    public void insertMismatchedTuple() throws Exception {
+        DictionaryHeapFile hf = openFile();
+        DictionaryPage page = new DictionaryPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(1, 3));
+    }
+
+    /**
+     * Tuples inserted through the BufferPool are read back after the table
+     * is reopened with its .dict file, and equal values from the reopened
+     * dictionary compare equal by code.
+     */
+    @Test public void reopenDictionaryHeapFile() throws Exception {
+        DictionaryHeapFile hf = openFile();
+        TransactionId tid = new TransactionId();
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Tuple t = tuple(i);
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            inserted.add(t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(hf.numPages() > 1);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        DictionaryHeapFile reopened = openFile();
+        assertEquals(CITIES.length, reopened.getDictionary().size());
+        tid = new TransactionId();
+        Map<RecordId, Tuple> tuples = new HashMap<>();
+        DbFileIterator it = reopened.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            tuples.put(t.getRecordId(), t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(inserted.size(), tuples.size());
+        for (Tuple t : inserted) {
+            Tuple read = tuples.get(t.getRecordId());
+            assertTrue(TestUtil.compareTuples(t, read));
+            EncodedStringField city = (EncodedStringField) read.getField(1);
+            assertSame(reopened.getDictionary(), city.getDictionary());
+            assertEquals(reopened.getDictionary().lookup(CITIES[t.getInt(0) % CITIES.length]), city.getCode());
+        }
+        Field a = tuples.get(inserted.get(0).getRecordId()).getField(1);
+        Field b = tuples.get(inserted.get(CITIES.length).getRecordId()).getField(1);
+        assertEquals(a, b);
+        assertTrue(a.compare(Predicate.Op.EQUALS, b));
+        assertEquals(a.hashCode(), new StringField(CITIES[0], Type.STRING_LEN).hashCode());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictionaryPageTest.class);
+    }
+}
@@ -0,0 +1,188 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.BitSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    private File f;
+    private File fsm;
+    private HeapFile hf;
+    private Tuple onPage1;
+
+    /**
+     * Set up a table of three full pages and a fourth page with room.
+     */
+    @Before public void createTable() throws Exception {
+        f = File.createTempFile("fsm", ".dat");
+        fsm = new File(f.getPath() + ".fsm");
+        f.deleteOnExit();
+        fsm.deleteOnExit();
+        hf = openFile();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < TUPLES_PER_PAGE * 3 + 10; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            if (i == TUPLES_PER_PAGE) {
+                onPage1 = t;
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(4, hf.numPages());
+        assertEquals(1, onPage1.getRecordId().getPageId().getPageNumber());
+    }
+
+    private HeapFile openFile() {
+        HeapFile file = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        return file;
+    }
+
+    /**
+     * Inserts one tuple into table with an empty BufferPool.
+     *
+     * @return the number of pages of table the insert read
+     */
+    private static long insertOne(HeapFile table, int expectedPage) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(-1, 2);
+        Database.getBufferPool().insertTuple(tid, table.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(expectedPage, t.getRecordId().getPageId().getPageNumber());
+        return Database.getBufferPool().getStats().getMisses(table.getId());
+    }
+
+    private BitSet readFsm() throws Exception {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fsm))) {
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return BitSet.valueOf(words);
+        }
+    }
+
+    /**
+     * Inserts go straight to the page with room instead of checking every
+     * full page first.
+     */
+    @Test public void skipsFullPages() throws Exception {
+        assertEquals(1, insertOne(hf, 3));
+    }
+
+    /**
+     * Unit test for HeapFile.close(): the map is saved in the .fsm file and
+     * read back, and the file is deleted, when the table is reopened.
+     */
+    @Test public void reopenWithFsmFile() throws Exception {
+        hf.close();
+        BitSet full = readFsm();
+        assertEquals(3, full.cardinality());
+        assertTrue(full.get(0) && full.get(1) && full.get(2));
+
+        HeapFile reopened = openFile();
+        assertEquals(1, insertOne(reopened, 3));
+        assertFalse(fsm.exists());
+    }
+
+    /**
+     * Without a .fsm file every page is a candidate; the first insert
+     * rebuilds the map, so the next one goes straight to the page with room.
+     */
+    @Test public void reopenWithoutFsmFile() throws Exception {
+        hf.close();
+        assertTrue(fsm.delete());
+
+        HeapFile reopened = openFile();
+        assertEquals(4, insertOne(reopened, 3));
+        assertEquals(1, insertOne(reopened, 3));
+    }
+
+    /**
+     * A damaged .fsm file is ignored.
+     */
+    @Test public void reopenWithCorruptFsmFile() throws Exception {
+        hf.close();
+        try (FileOutputStream out = new FileOutputStream(fsm)) {
+            out.write(new byte[]{0, 0, 0, 9, 1});
+        }
+
+        HeapFile reopened = openFile();
+        assertEquals(4, insertOne(reopened, 3));
+        assertFalse(fsm.exists());
+    }
+
+    /**
+     * Deleting a tuple from a full page makes it a candidate again, also
+     * after the table is reopened.
+     */
+    @Test public void deleteMarksPageWithRoom() throws Exception {
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, onPage1);
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        BitSet full = readFsm();
+        assertTrue(full.get(0) && full.get(2));
+        assertFalse(full.get(1));
+
+        HeapFile reopened = openFile();
+        assertEquals(1, insertOne(reopened, 1));
+        // page 1 is full again, which the next insert finds out
+        assertEquals(2, insertOne(reopened, 3));
+    }
+
+    /**
+     * A page of variable-length records that is too full for a large tuple
+     * still takes a small one.
+     */
+    @Test public void largeTupleThenSmallTuple() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        File slotted = File.createTempFile("fsm-slotted", ".dat");
+        slotted.deleteOnExit();
+        SlottedHeapFile table = new SlottedHeapFile(slotted, td);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        // fill page 0 with large tuples until one no longer fits
+        TransactionId tid = new TransactionId();
+        for (int i = 0; table.numPages() < 2; i++) {
+            Database.getBufferPool().insertTuple(tid, table.getId(), SlottedPageTest.tuple(td, i, 100));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Tuple small = SlottedPageTest.tuple(td, -1, 0);
+        Database.getBufferPool().insertTuple(tid, table.getId(), small);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, small.getRecordId().getPageId().getPageNumber());
+        new File(slotted.getPath() + ".fsm").deleteOnExit();
+        table.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,194 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+  // with two int fields a build tuple is estimated at about 100 bytes, with a
+  // string key at about 250 bytes: 1 byte leaves room for a single tuple, so
+  // the resident partition overflows and every spilled build partition is
+  // loaded in chunks; 2000 bytes hold a few tuples of each partition
+  static final long[] BUDGETS = { 1, 2000, 20000, HashEquiJoin.DEFAULT_MEMORY_BUDGET };
+  static final int HOT_KEY = 7;
+
+  /**
+   * @return the keys of a skewed input: a third of the tuples share HOT_KEY,
+   *   the others cycle through distinct values, so every key has duplicates
+   */
+  static IntUnaryOperator skewed(int distinct) {
+    return i -> i % 3 == 0 ? HOT_KEY : i % distinct;
+  }
+
+  /**
+   * @return an open list of n tuples of width fields whose first field is
+   *   key of the tuple's index, as a string if strings is set
+   */
+  static OpIterator createInput(int n, int width, IntUnaryOperator key, boolean strings) {
+    if (n == 0) {
+      return TestUtil.createTupleList(width, new int[0]);
+    }
+    Object[] data = new Object[n * width];
+    for (int i = 0; i < n; i++) {
+      int k = key.applyAsInt(i);
+      data[i * width] = strings ? "key" + k : (Object) k;
+      for (int j = 1; j < width; j++) {
+        data[i * width + j] = i * j;
+      }
+    }
+    return TestUtil.createTupleList(width, data);
+  }
+
+  /**
+   * @return the string form of every tuple op returns, sorted
+   */
+  static List<String> drain(OpIterator op) throws Exception {
+    List<String> tuples = new ArrayList<>();
+    while (op.hasNext()) {
+      tuples.add(op.next().toString());
+    }
+    Collections.sort(tuples);
+    return tuples;
+  }
+
+  static List<String> expected(JoinPredicate pred, OpIterator left, OpIterator right) throws Exception {
+    Join join = new Join(pred, left, right);
+    join.open();
+    List<String> tuples = drain(join);
+    join.close();
+    return tuples;
+  }
+
+  static Set<String> spillFiles() {
+    Set<String> files = new HashSet<>();
+    String[] names = new File(System.getProperty("java.io.tmpdir")).list();
+    if (names != null) {
+      for (String name : names) {
+        if (name.startsWith("hashjoin") && name.endsWith(".spill")) {
+          files.add(name);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Joins the inputs with every budget and compares the result with Join,
+   * also after a rewind in the middle of the output and one at its end.
+   */
+  void checkJoin(int leftRows, int rightRows, boolean strings) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    List<String> expected = expected(pred, createInput(leftRows, 2, skewed(50), strings),
+        createInput(rightRows, 3, skewed(40), strings));
+    assertTrue(expected.size() > leftRows);
+
+    for (long budget : BUDGETS) {
+      Set<String> before = spillFiles();
+      HashEquiJoin op = new HashEquiJoin(pred, createInput(leftRows, 2, skewed(50), strings),
+          createInput(rightRows, 3, skewed(40), strings), budget);
+      op.open();
+      Set<String> spilled = spillFiles();
+      spilled.removeAll(before);
+      // only the default budget holds the whole build side
+      assertEquals("budget " + budget, budget != HashEquiJoin.DEFAULT_MEMORY_BUDGET, !spilled.isEmpty());
+
+      for (int i = 0; i < expected.size() / 2; i++) {
+        op.next();
+      }
+      op.rewind();
+      assertEquals("budget " + budget, expected, drain(op));
+      op.rewind();
+      assertEquals("budget " + budget, expected, drain(op));
+      assertTrue(TestUtil.checkExhausted(op));
+
+      op.close();
+      Set<String> left = spillFiles();
+      left.retainAll(spilled);
+      assertTrue("spill files are deleted on close", left.isEmpty());
+    }
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() with int keys
+   */
+  @Test public void intKeys() throws Exception {
+    checkJoin(300, 200, false);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() with string keys
+   */
+  @Test public void stringKeys() throws Exception {
+    checkJoin(300, 200, true);
+  }
+
+  /**
+   * Every build tuple has the same key, so one build partition holds the
+   * whole input and is loaded in many chunks.
+   */
+  @Test public void singleKey() throws Exception {
+    for (boolean strings : new boolean[] { false, true }) {
+      JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+      List<String> expected = expected(pred, createInput(100, 2, i -> HOT_KEY, strings),
+          createInput(50, 3, i -> HOT_KEY, strings));
+      assertEquals(100 * 50, expected.size());
+      for (long budget : BUDGETS) {
+        HashEquiJoin op = new HashEquiJoin(pred, createInput(100, 2, i -> HOT_KEY, strings),
+            createInput(50, 3, i -> HOT_KEY, strings), budget);
+        op.open();
+        assertEquals("budget " + budget, expected, drain(op));
+        op.rewind();
+        assertEquals("budget " + budget, expected, drain(op));
+        op.close();
+      }
+    }
+  }
+
+  /**
+   * The join is empty when either input is empty or no keys match.
+   */
+  @Test public void noMatches() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    for (long budget : BUDGETS) {
+      OpIterator[][] inputs = {
+          { createInput(0, 2, skewed(10), false), createInput(50, 3, skewed(10), false) },
+          { createInput(100, 2, skewed(10), false), createInput(0, 3, skewed(10), false) },
+          { createInput(100, 2, skewed(10), false), createInput(50, 3, i -> -i - 1, false) },
+      };
+      for (OpIterator[] input : inputs) {
+        HashEquiJoin op = new HashEquiJoin(pred, input[0], input[1], budget);
+        op.open();
+        assertTrue(TestUtil.checkExhausted(op));
+        op.rewind();
+        assertTrue(TestUtil.checkExhausted(op));
+        op.close();
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashEquiJoinTest.class);
+  }
+}
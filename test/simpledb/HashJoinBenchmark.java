@@ -0,0 +1,46 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * 两个table按唯一的int key做等值join(1:1)，测不同内存预算下HashEquiJoin的耗时
+ * 预算小于build侧时join会溢出到临时文件
+ *
+ * 用法: java simpledb.HashJoinBenchmark [tablePages] [budgetMB...]
+ */
+public class HashJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        long[] budgets = new long[Math.max(1, args.length - 1)];
+        budgets[0] = HashEquiJoin.DEFAULT_MEMORY_BUDGET;
+        for(int i = 1; i < args.length; i++) {
+            budgets[i - 1] = Long.parseLong(args[i]) << 20;
+        }
+
+        HeapFile left = BufferPoolBenchmark.createTable(tablePages);
+        HeapFile right = BufferPoolBenchmark.createTable(tablePages);
+        System.out.println("budgetMB\tms\trows");
+        for(long budget : budgets) {
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId()), budget);
+            join.open();
+            long rows = 0;
+            while(join.hasNext()) {
+                join.next();
+                rows++;
+            }
+            join.close();
+            Database.getBufferPool().transactionComplete(tid);
+            System.out.printf("%d\t%.0f\t%d%n", budget >> 20, (System.nanoTime() - start) / 1e6, rows);
+        }
+    }
+}
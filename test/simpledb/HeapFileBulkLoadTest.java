@@ -0,0 +1,275 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class HeapFileBulkLoadTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+
+    // class whose page writes fail, to make bulkLoad fail while it writes a batch
+    static class HeapFileFailingWrites extends HeapFile {
+
+        public HeapFileFailingWrites(File f, TupleDesc td) {
+            // compressed files write the loaded pages one by one with writePage
+            super(f, td, PageCodec.LZ);
+        }
+
+        @Override
+        public void writePage(Page page) throws IOException {
+            throw new IOException("disk full");
+        }
+    }
+
+    private File f;
+    private HeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        f = File.createTempFile("bulkload", ".dat");
+        f.deleteOnExit();
+        hf = Utility.openHeapFile(2, f);
+    }
+
+    private static List<Tuple> tuples(int n) {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{i, i % 100}));
+        }
+        return tuples;
+    }
+
+    private static Map<RecordId, Tuple> scan(HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        Map<RecordId, Tuple> tuples = new HashMap<>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull(tuples.put(t.getRecordId(), t));
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    private static void assertLoaded(List<Tuple> expected, Map<RecordId, Tuple> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Tuple t : expected) {
+            assertTrue(TestUtil.compareTuples(t, actual.get(t.getRecordId())));
+        }
+    }
+
+    /**
+     * Unit test for HeapFile.bulkLoad(): the tuples are packed into new
+     * pages, written in several batches, and a scan returns them at the
+     * RecordIds they were given.
+     */
+    @Test public void loadAndScan() throws Exception {
+        List<Tuple> tuples = tuples(TUPLES_PER_PAGE * 100 + 7);
+        TransactionId tid = new TransactionId();
+        assertEquals(tuples.size(), hf.bulkLoad(tid, tuples.iterator()));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(101, hf.numPages());
+        assertEquals(101L * BufferPool.getPageSize(), f.length());
+        for (int i = 0; i < tuples.size(); i++) {
+            RecordId rid = tuples.get(i).getRecordId();
+            assertEquals(i / TUPLES_PER_PAGE, rid.getPageId().getPageNumber());
+            assertEquals(i % TUPLES_PER_PAGE, rid.getTupleNumber());
+        }
+        assertLoaded(tuples, scan(hf));
+
+        // the last page has room, full pages are skipped by inserts
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(-1, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(100, t.getRecordId().getPageId().getPageNumber());
+    }
+
+    /**
+     * A second load appends after the pages of the first one, and the
+     * loaded pages are read back after the file is reopened.
+     */
+    @Test public void loadTwiceAndReopen() throws Exception {
+        List<Tuple> first = tuples(TUPLES_PER_PAGE + 1);
+        List<Tuple> second = tuples(10);
+        TransactionId tid = new TransactionId();
+        hf.bulkLoad(tid, first.iterator());
+        hf.bulkLoad(tid, second.iterator());
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(3, hf.numPages());
+        assertEquals(2, second.get(0).getRecordId().getPageId().getPageNumber());
+
+        List<Tuple> all = new ArrayList<>(first);
+        all.addAll(second);
+        hf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Map<RecordId, Tuple> scanned = scan(reopened);
+        assertEquals(all.size(), scanned.size());
+        for (Tuple t : all) {
+            RecordId rid = new RecordId(new HeapPageId(reopened.getId(), t.getRecordId().getPageId().getPageNumber()),
+                    t.getRecordId().getTupleNumber());
+            assertTrue(TestUtil.compareTuples(t, scanned.get(rid)));
+        }
+    }
+
+    /**
+     * The loaded pages are locked by the loading transaction and are not
+     * part of the table until it commits: a concurrent reader sees the table
+     * as it was before the load, and so does everyone after an abort, which
+     * truncates the file back to its length before the load.
+     */
+    @Test public void loadAndAbort() throws Exception {
+        List<Tuple> before = tuples(10);
+        TransactionId tid = new TransactionId();
+        hf.bulkLoad(tid, before.iterator());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        hf.bulkLoad(tid, tuples(TUPLES_PER_PAGE * 3).iterator());
+        for (int pgNo = 1; pgNo < 4; pgNo++) {
+            assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), pgNo)));
+        }
+        assertEquals(4L * BufferPool.getPageSize(), f.length());
+        assertEquals(1, hf.numPages());
+        assertLoaded(before, scan(hf));
+
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(1, hf.numPages());
+        assertEquals(BufferPool.getPageSize(), f.length());
+        assertLoaded(before, scan(hf));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertLoaded(before, scan(hf));
+    }
+
+    /**
+     * A page appended by another transaction after the loaded pages makes
+     * them part of the table while they are still locked; an abort then
+     * empties them instead of truncating the file.
+     */
+    @Test public void abortWithPageAppendedAfterLoad() throws Exception {
+        List<Tuple> expected = tuples(TUPLES_PER_PAGE);
+        TransactionId tid = new TransactionId();
+        hf.bulkLoad(tid, expected.iterator());
+        Database.getBufferPool().transactionComplete(tid);
+
+        TransactionId loader = new TransactionId();
+        hf.bulkLoad(loader, tuples(TUPLES_PER_PAGE * 2).iterator());
+        // the only page is full, so the insert appends a page after the load
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(-1, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(3, t.getRecordId().getPageId().getPageNumber());
+        assertEquals(4, hf.numPages());
+
+        Database.getBufferPool().transactionComplete(loader, false);
+        assertEquals(4, hf.numPages());
+        expected.add(t);
+        assertLoaded(expected, scan(hf));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertLoaded(expected, scan(hf));
+
+        // the emptied pages take inserts again
+        tid = new TransactionId();
+        t = Utility.getHeapTuple(-2, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1, t.getRecordId().getPageId().getPageNumber());
+    }
+
+    /**
+     * A tuple that doesn't match the TupleDesc stops the load; the tuples
+     * before it stay loaded.
+     */
+    @Test public void mismatchedTuple() throws Exception {
+        List<Tuple> tuples = tuples(TUPLES_PER_PAGE + 10);
+        List<Tuple> input = new ArrayList<>(tuples);
+        input.add(Utility.getHeapTuple(1, 3));
+        input.add(Utility.getHeapTuple(2, 2));
+        TransactionId tid = new TransactionId();
+        try {
+            hf.bulkLoad(tid, input.iterator());
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertEquals(0, e.getSuppressed().length);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(2, hf.numPages());
+        assertLoaded(tuples, scan(hf));
+    }
+
+    /**
+     * When writing the loaded pages fails while bulkLoad handles another
+     * error, the original error is thrown with the IOException attached.
+     */
+    @Test public void writeFailsAfterMismatchedTuple() throws Exception {
+        HeapFile failing = new HeapFileFailingWrites(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(failing, SystemTestUtil.getUUID());
+        Iterator<Tuple> input = new Iterator<Tuple>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Tuple next() {
+                return next++ < 10 ? Utility.getHeapTuple(next, 2) : Utility.getHeapTuple(next, 3);
+            }
+        };
+        TransactionId tid = new TransactionId();
+        try {
+            failing.bulkLoad(tid, input);
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof IOException);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, failing.numPages());
+
+        // a failed write of a full batch is reported as such
+        try {
+            failing.bulkLoad(tid, tuples(TUPLES_PER_PAGE * 65).iterator());
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileBulkLoadTest.class);
+    }
+}
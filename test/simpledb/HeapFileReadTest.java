@@ -31,7 +31,7 @@ public class HeapFileReadTest extends SimpleDbTestBase {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws Exception {
         Database.getBufferPool().transactionComplete(tid);
     }
 
@@ -81,6 +81,37 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() on a memory-mapped file: tuples read
+     * before the page is written back keep their contents.
+     */
+    @Test
+    public void readPageMemoryMapped() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        List<Tuple> expected = new ArrayList<>();
+        Iterator<Tuple> it = ((HeapPage) hf.readPage(pid)).iterator();
+        while (it.hasNext()) {
+            expected.add(it.next());
+        }
+        assertEquals(20, expected.size());
+
+        HeapFile mapped = new HeapFile(hf.getFile(), td, true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        List<Tuple> views = new ArrayList<>();
+        it = ((HeapPage) mapped.readPage(pid)).iterator();
+        while (it.hasNext()) {
+            views.add(it.next());
+        }
+
+        // overwrite the page before any field of the views is decoded
+        mapped.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+        assertEquals(504, ((HeapPage) mapped.readPage(pid)).getNumEmptySlots());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), views.get(i).toString());
+        }
+        mapped.close();
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
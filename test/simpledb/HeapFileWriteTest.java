@@ -25,7 +25,7 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         tid = new TransactionId();
     }
 
-    @After public void tearDown() {
+    @After public void tearDown() throws Exception {
         Database.getBufferPool().transactionComplete(tid);
     }
 
@@ -0,0 +1,76 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 比较IndexNestedLoopJoin与HashEquiJoin的耗时
+ * 内侧是一个按key建立的大B+树table，外侧是行数不同的内存输入，按key做等值join
+ * HashEquiJoin每次都要扫描整个内侧table，IndexNestedLoopJoin对每个外侧tuple在B+树中查找一次，
+ * 外侧越小优势越大，外侧足够大时查找的开销超过扫描
+ *
+ * 用法: java simpledb.IndexNestedLoopJoinBenchmark [innerRows] [runs]
+ */
+public class IndexNestedLoopJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int innerRows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        BTreeFile inner = BTreeUtility.createRandomBTreeFile(2, innerRows, innerRows, null, null, 0);
+        Database.getCatalog().addTable(inner, "inlj_inner");
+        int[] outerRows = {10, 1_000, 100_000};
+
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        System.out.println("run\touterRows\toperator\tms\trows");
+        for(int run = 0; run < runs; run++) {
+            for(int rows : outerRows) {
+                TupleIterator outer = relation(rows, innerRows, rows);
+                TransactionId tid = new TransactionId();
+                time(run, rows, new HashEquiJoin(eq, outer, new SeqScan(tid, inner.getId())));
+                time(run, rows, new IndexNestedLoopJoin(eq, outer, new SeqScan(tid, inner.getId())));
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }
+    }
+
+    private static void time(int run, int outerRows, OpIterator join) throws Exception {
+        long start = System.nanoTime();
+        join.open();
+        long rows = 0;
+        while(join.hasNext()) {
+            join.next();
+            rows++;
+        }
+        join.close();
+        System.out.printf("%d\t%d\t%s\t%.0f\t%d%n", run, outerRows, join.getClass().getSimpleName(),
+                (System.nanoTime() - start) / 1e6, rows);
+    }
+
+    /**
+     * @return rows个(key, i)，key是[0, keys)中的随机数
+     */
+    private static TupleIterator relation(int rows, int keys, int seed) {
+        Random random = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for(int i = 0; i < rows; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{random.nextInt(keys), i}));
+        }
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+}
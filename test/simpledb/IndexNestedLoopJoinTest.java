@@ -0,0 +1,173 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Filter;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+  static final Predicate.Op[] OPS = SortMergeJoinTest.OPS;
+
+  BTreeFile bt;
+  TransactionId tid;
+  // the tuples of bt, to compute the expected results without the B+ tree
+  List<Tuple> btTuples;
+
+  /**
+   * Set up a B+ tree of 300 tuples keyed on field 0, with values in [0, 100)
+   */
+  @Before public void createBTree() throws Exception {
+    BTreeFile raw = BTreeUtility.createRandomBTreeFile(2, 300, 100, null, null, 0);
+    bt = new BTreeFile(raw.getFile(), 0, Utility.getTupleDesc(2, "bt"));
+    Database.getCatalog().addTable(bt, SystemTestUtil.getUUID());
+    tid = new TransactionId();
+    btTuples = new ArrayList<>();
+    SeqScan scan = new SeqScan(tid, bt.getId());
+    scan.open();
+    while (scan.hasNext()) {
+      btTuples.add(scan.next());
+    }
+    scan.close();
+    assertEquals(300, btTuples.size());
+  }
+
+  OpIterator inner() {
+    return new TupleIterator(bt.getTupleDesc(), btTuples);
+  }
+
+  /**
+   * Joins op and compares the result with expected, also after a rewind in
+   * the middle of the output and one at its end.
+   */
+  static void checkJoin(String message, IndexNestedLoopJoin op, List<String> expected) throws Exception {
+    op.open();
+    for (int i = 0; i < expected.size() / 2; i++) {
+      op.next();
+    }
+    op.rewind();
+    assertEquals(message, expected, HashEquiJoinTest.drain(op));
+    op.rewind();
+    assertEquals(message, expected, HashEquiJoinTest.drain(op));
+    assertTrue(message, TestUtil.checkExhausted(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.getNext() with duplicate keys on both
+   * sides and outer keys that are not in the B+ tree
+   */
+  @Test public void allOperators() throws Exception {
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      List<String> expected = HashEquiJoinTest.expected(pred,
+          HashEquiJoinTest.createInput(200, 3, i -> i % 120 - 10, false), inner());
+      assertFalse(expected.isEmpty());
+      IndexNestedLoopJoin op = new IndexNestedLoopJoin(pred,
+          HashEquiJoinTest.createInput(200, 3, i -> i % 120 - 10, false), new SeqScan(tid, bt.getId()));
+      checkJoin(o.toString(), op, expected);
+    }
+  }
+
+  /**
+   * The predicates of Filters over the inner scan are applied to the tuples
+   * found in the B+ tree.
+   */
+  @Test public void innerFilter() throws Exception {
+    Predicate filter = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(50));
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      List<String> expected = HashEquiJoinTest.expected(pred,
+          HashEquiJoinTest.createInput(100, 2, i -> i, false), new Filter(filter, inner()));
+      IndexNestedLoopJoin op = new IndexNestedLoopJoin(pred,
+          HashEquiJoinTest.createInput(100, 2, i -> i, false), new Filter(filter, new SeqScan(tid, bt.getId())));
+      checkJoin(o.toString(), op, expected);
+    }
+  }
+
+  /**
+   * The join is empty when the outer input is empty.
+   */
+  @Test public void emptyOuter() throws Exception {
+    for (Predicate.Op o : OPS) {
+      IndexNestedLoopJoin op = new IndexNestedLoopJoin(new JoinPredicate(0, o, 0),
+          HashEquiJoinTest.createInput(0, 2, i -> i, false), new SeqScan(tid, bt.getId()));
+      op.open();
+      assertTrue(TestUtil.checkExhausted(op));
+      op.rewind();
+      assertTrue(TestUtil.checkExhausted(op));
+      op.close();
+    }
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.canProbe()
+   */
+  @Test public void canProbe() throws Exception {
+    HeapFile heap = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+    Predicate filter = new Predicate(1, Predicate.Op.EQUALS, new IntField(1));
+    assertTrue(IndexNestedLoopJoin.canProbe(new SeqScan(tid, bt.getId()), 0));
+    assertTrue(IndexNestedLoopJoin.canProbe(new Filter(filter, new SeqScan(tid, bt.getId())), 0));
+    assertFalse(IndexNestedLoopJoin.canProbe(new SeqScan(tid, bt.getId()), 1));
+    assertFalse(IndexNestedLoopJoin.canProbe(new SeqScan(tid, heap.getId()), 0));
+    assertFalse(IndexNestedLoopJoin.canProbe(inner(), 0));
+  }
+
+  /**
+   * The constructor rejects inner children that cannot be looked up and
+   * operators the B+ tree cannot answer.
+   */
+  @Test public void unsupportedJoins() throws Exception {
+    OpIterator[][] inputs = {
+        { HashEquiJoinTest.createInput(10, 2, i -> i, false), inner() },
+        { HashEquiJoinTest.createInput(10, 2, i -> i, false), new SeqScan(tid, bt.getId()) },
+    };
+    JoinPredicate[] preds = {
+        new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0),
+    };
+    for (int i = 0; i < inputs.length; i++) {
+      try {
+        new IndexNestedLoopJoin(preds[i], inputs[i][0], inputs[i][1]);
+        fail("expected IllegalArgumentException");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertTrue(IndexNestedLoopJoin.supports(Predicate.Op.GREATER_THAN_OR_EQ));
+    assertFalse(IndexNestedLoopJoin.supports(Predicate.Op.LIKE));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+  }
+}
@@ -0,0 +1,36 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * 向已经写满的table中插入tuple的吞吐量测试
+ * 每轮一个事务插入同样多的tuple然后提交，table每轮都会变大，测的是HeapFile.insertTuple找到有空位的page的开销
+ *
+ * 用法: java simpledb.InsertBenchmark [tablePages] [insertsPerRun] [runs]
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int inserts = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        HeapFile table = BufferPoolBenchmark.createTable(tablePages);
+        // NO STEAL下事务修改的page都要留在缓存中
+        Database.resetBufferPool(tablePages * 2);
+        System.out.println("run\tpages\tms\tinserts/s");
+        for(int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            TransactionId tid = new TransactionId();
+            for(int i = 0; i < inserts; i++) {
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[]{i, i % 100}));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d\t%d\t%.0f\t%.0f%n", run, table.numPages(), seconds * 1000, inserts / seconds);
+        }
+    }
+}
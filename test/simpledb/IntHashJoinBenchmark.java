@@ -0,0 +1,77 @@
+package simpledb;
+
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 类似外键join的int等值HashEquiJoin：build侧buildRows个不同的key，probe侧probeRows个key，约1/4能匹配
+ * 两边都在内存中，测的是建hash表和probe的耗时，以及hash表占用的堆内存
+ *
+ * 用法: java simpledb.IntHashJoinBenchmark [buildRows] [probeRows] [runs]
+ */
+public class IntHashJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int buildRows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int probeRows = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        TupleIterator build = relation(buildRows, buildRows, 1);
+        TupleIterator probe = relation(probeRows, buildRows * 4, 2);
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("run\tbuildMs\tprobeMs\ttableMB\tmatches");
+        for(int run = 0; run < runs; run++) {
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), build, probe,
+                    Long.MAX_VALUE);
+            join.open();
+            long built = System.nanoTime();
+            System.gc();
+            long tableBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+            long probeStart = System.nanoTime();
+            long matches = 0;
+            while(join.hasNext()) {
+                join.next();
+                matches++;
+            }
+            long end = System.nanoTime();
+            join.close();
+            System.out.printf("%d\t%.0f\t%.0f\t%.1f\t%d%n", run, (built - start) / 1e6, (end - probeStart) / 1e6,
+                    tableBytes / (1024.0 * 1024), matches);
+        }
+    }
+
+    /**
+     * @return rows个(key, i)，key是[0, keys)中的随机数；keys等于rows时是0..rows-1的一个排列
+     */
+    private static TupleIterator relation(int rows, int keys, int seed) {
+        Random random = new Random(seed);
+        int[] values = new int[rows];
+        for(int i = 0; i < rows; i++) {
+            values[i] = keys == rows ? i : random.nextInt(keys);
+        }
+        if(keys == rows) {
+            for(int i = rows - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+        }
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for(int i = 0; i < rows; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{values[i], i}));
+        }
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+}
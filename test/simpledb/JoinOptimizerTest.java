@@ -11,9 +11,20 @@ import org.junit.Test;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
 import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.SortMergeJoin;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
 import simpledb.optimizer.JoinOptimizer;
 import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
 import simpledb.optimizer.TableStats;
 import simpledb.storage.BufferPool;
 import simpledb.storage.HeapFile;
@@ -115,7 +126,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
      * estimateJoinCost.
      */
     @Test
-    public void estimateJoinCostTest() throws ParsingException, IOException {
+    public void estimateJoinCostTest() throws Exception {
         // It's hard to narrow these down much at all, because students
         // may have implemented custom join algorithms.
         // So, just make sure the orders of the return values make sense.
@@ -219,7 +230,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
      * are reasonable
      */
     @Test
-    public void estimateJoinCardinality() throws ParsingException, IOException {
+    public void estimateJoinCardinality() throws Exception {
         TransactionId tid = new TransactionId();
         Parser p = new Parser();
         JoinOptimizer j = new JoinOptimizer(p.generateLogicalPlan(tid,
@@ -279,7 +290,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
      * of ordering joins, and not taking an unreasonable amount of time to do so
      */
     @Test
-    public void orderJoinsTest() throws ParsingException, IOException {
+    public void orderJoinsTest() throws Exception {
         // This test is intended to approximate the join described in the
         // "Query Planning" section of 2009 Quiz 1,
         // though with some minor variation due to limitations in simpledb
@@ -389,8 +400,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
      * reasonable amount of time
      */
     @Test(timeout = 60000)
-    public void bigOrderJoinsTest() throws IOException,
-            ParsingException {
+    public void bigOrderJoinsTest() throws Exception {
         final int IO_COST = 103;
 
         JoinOptimizer j;
@@ -533,8 +543,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
      * put as the outermost join
      */
     @Test
-    public void nonequalityOrderJoinsTest() throws IOException,
-            ParsingException {
+    public void nonequalityOrderJoinsTest() throws Exception {
         final int IO_COST = 103;
 
         JoinOptimizer j;
@@ -629,4 +638,130 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(result.get(result.size() - 1).t2Alias.equals("a")
                 || result.get(result.size() - 1).t1Alias.equals("a"));
     }
+
+    /**
+     * Create a B+ tree table "bt" keyed on c0 and a heap table "outer_t" with
+     * the given numbers of rows, and register their stats
+     */
+    private static void createIndexJoinTables(int btRows, int outerRows) throws Exception {
+        BTreeFile raw = BTreeUtility.createRandomBTreeFile(2, btRows, btRows, null, null, 0);
+        BTreeFile bt = new BTreeFile(raw.getFile(), 0, Utility.getTupleDesc(2, "c"));
+        Database.getCatalog().addTable(bt, "bt");
+        TableStats.setTableStats("bt", new TableStats(bt.getId(), 1000));
+
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, outerRows, btRows, null, null, "c");
+        Database.getCatalog().addTable(outer, "outer_t");
+        TableStats.setTableStats("outer_t", new TableStats(outer.getId(), 1000));
+    }
+
+    private static final String INDEX_JOIN_QUERY = "SELECT * FROM outer_t, bt WHERE outer_t.c0 = bt.c0;";
+
+    /**
+     * @return the classes of the joins in plan, from the root down
+     */
+    private static List<Class<?>> joinClasses(OpIterator plan) {
+        List<Class<?>> joins = new ArrayList<>();
+        if (plan instanceof Join || plan instanceof HashEquiJoin || plan instanceof SortMergeJoin
+                || plan instanceof IndexNestedLoopJoin) {
+            joins.add(plan.getClass());
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (child != null) {
+                    joins.addAll(joinClasses(child));
+                }
+            }
+        }
+        return joins;
+    }
+
+    /**
+     * Unit test for JoinOptimizer.chooseJoinAlgorithm(): EQUALS joins use an
+     * index nested-loop join when the left-hand side is small and the
+     * right-hand table is a B+ tree keyed on the join field, and a hash join
+     * otherwise; range joins use a sort-merge join when it is cheaper than a
+     * nested-loop join.
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() throws Exception {
+        TransactionId tid = new TransactionId();
+        createIndexJoinTables(50000, 50);
+        JoinOptimizer jo = new JoinOptimizer(new Parser().generateLogicalPlan(tid, INDEX_JOIN_QUERY),
+                new ArrayList<>());
+        TableStats btStats = TableStats.getTableStats("bt");
+        int btCard = btStats.estimateTableCardinality(1.0);
+        double btCost = btStats.estimateScanCost();
+        double outerCost = TableStats.getTableStats("outer_t").estimateScanCost();
+
+        LogicalJoinNode onKey = new LogicalJoinNode("outer_t", "bt", "c0", "c0", Predicate.Op.EQUALS);
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.INDEX_NESTED_LOOP,
+                jo.chooseJoinAlgorithm(onKey, 50, btCard, outerCost, btCost));
+        // looking up every tuple of a large left-hand side costs more than
+        // scanning the table once
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.HASH,
+                jo.chooseJoinAlgorithm(onKey, 50000, btCard, outerCost * 1000, btCost));
+        // the index is on c0 only, and the heap table has none
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.HASH, jo.chooseJoinAlgorithm(
+                new LogicalJoinNode("outer_t", "bt", "c0", "c1", Predicate.Op.EQUALS), 50, btCard, outerCost, btCost));
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.HASH, jo.chooseJoinAlgorithm(
+                onKey.swapInnerOuter(), btCard, 50, btCost, outerCost));
+        // each join is costed as the algorithm chosen for it, so the index
+        // join costs less than the hash join it replaces
+        double hashCost = outerCost + btCost + 50 + btCard;
+        Assert.assertTrue(jo.estimateJoinCost(onKey, 50, btCard, outerCost, btCost) < hashCost);
+        Assert.assertEquals(hashCost, jo.estimateJoinCost(
+                new LogicalJoinNode("outer_t", "bt", "c0", "c1", Predicate.Op.EQUALS), 50, btCard, outerCost, btCost),
+                0.0001);
+        Assert.assertEquals(outerCost * 1000 + btCost + 50000 + btCard,
+                jo.estimateJoinCost(onKey, 50000, btCard, outerCost * 1000, btCost), 0.0001);
+
+        LogicalJoinNode range = new LogicalJoinNode("outer_t", "bt", "c0", "c0", Predicate.Op.LESS_THAN);
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.SORT_MERGE,
+                jo.chooseJoinAlgorithm(range, 1000, 1000, 10, 10));
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.NESTED_LOOP,
+                jo.chooseJoinAlgorithm(range, 1, 1, 10, 10));
+        Assert.assertEquals(JoinOptimizer.JoinAlgorithm.NESTED_LOOP, jo.chooseJoinAlgorithm(
+                new LogicalJoinNode("outer_t", "bt", "c0", "c0", Predicate.Op.NOT_EQUALS), 1000, 1000, 10, 10));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The plan the parser builds for an EQUALS join of a small table with a
+     * B+ tree table on its key looks the small table's tuples up in the B+
+     * tree, and returns the same tuples as a nested-loop join.
+     */
+    @Test
+    public void indexJoinPlanTest() throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator plan = parseIndexJoinQuery(tid, 50);
+        Assert.assertEquals(Collections.singletonList(IndexNestedLoopJoin.class), joinClasses(plan));
+
+        OpIterator join = new Join(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, Database.getCatalog().getTableId("outer_t"), "outer_t"),
+                new SeqScan(tid, Database.getCatalog().getTableId("bt"), "bt"));
+        join.open();
+        List<String> expected = HashEquiJoinTest.drain(join);
+        join.close();
+        plan.open();
+        Assert.assertEquals(expected, HashEquiJoinTest.drain(plan));
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * With a large table on the other side the parser uses a hash join.
+     */
+    @Test
+    public void hashJoinPlanTest() throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator plan = parseIndexJoinQuery(tid, 20000);
+        Assert.assertEquals(Collections.singletonList(HashEquiJoin.class), joinClasses(plan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private OpIterator parseIndexJoinQuery(TransactionId tid, int outerRows) throws Exception {
+        createIndexJoinTables(50000, outerRows);
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid, INDEX_JOIN_QUERY);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
 }
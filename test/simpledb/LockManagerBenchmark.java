@@ -0,0 +1,70 @@
+package simpledb;
+
+import simpledb.common.LockManager;
+import simpledb.common.Permissions;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多线程下LockManager的吞吐量测试
+ * 每个线程在自己的table上重复执行事务，事务的加锁模式与HeapFile相同:
+ * 扫描 -> 依次给table的每一页加读锁；插入 -> 给最后一页加写锁
+ * 线程之间访问的page互不相同，理想情况下吞吐量应随线程数线性增长
+ *
+ * 用法: java simpledb.LockManagerBenchmark [pagesPerTable] [secondsPerRun]
+ */
+public class LockManagerBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int pagesPerTable = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+
+        System.out.println("threads\ttxn/s\tlocks/s");
+        for(int threads = 1; threads <= 16; threads *= 2) {
+            AtomicLong txns = run(new LockManager(), threads, pagesPerTable, seconds * 1000);
+            double txnPerSec = txns.get() * 1000.0 / (seconds * 1000);
+            System.out.printf("%d\t%.0f\t%.0f%n", threads, txnPerSec, txnPerSec * (pagesPerTable + 1));
+        }
+    }
+
+    private static AtomicLong run(LockManager lockManager, int threads, int pagesPerTable, long millis)
+            throws InterruptedException {
+        AtomicLong txns = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + millis;
+        for(int i = 0; i < threads; i++) {
+            final int tableId = i + 1;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    while(System.currentTimeMillis() < deadline) {
+                        TransactionId tid = new TransactionId();
+                        // scan
+                        for(int pgNo = 0; pgNo < pagesPerTable; pgNo++) {
+                            lockManager.acquireLock(tid, new HeapPageId(tableId, pgNo), Permissions.READ_ONLY);
+                        }
+                        // insert
+                        lockManager.acquireLock(tid, new HeapPageId(tableId, pagesPerTable - 1), Permissions.READ_WRITE);
+                        lockManager.releaseTransactionLocks(tid);
+                        txns.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        return txns;
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * 比较HeapFile两种读路径的全表扫描带宽：FileChannel的read vs 从mmap的映射区域拷贝
+ * 直接调用readPage扫描所有page并累加第一列，不经过BufferPool，测的只是读page+解析的开销
+ * 生成的文件刚写完，大部分仍在OS page cache中；要测冷数据需要先手动清空page cache
+ *
+ * 用法: java simpledb.MmapScanBenchmark [tableMB] [runs]
+ */
+public class MmapScanBenchmark {
+
+    private static final int NUM_FIELDS = 2;
+
+    public static void main(String[] args) throws IOException {
+        long tableMB = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        int numPages = (int) (tableMB * 1024 * 1024 / BufferPool.getPageSize());
+        File f = File.createTempFile("mmap-bench", ".dat");
+        f.deleteOnExit();
+        writeTable(f, numPages);
+
+        System.out.println("mode\trun\tMB/s\tsum");
+        for(int run = 0; run < runs; run++) {
+            for(boolean mapped : new boolean[]{false, true}) {
+                HeapFile table = new HeapFile(f, Utility.getTupleDesc(NUM_FIELDS), mapped);
+                Database.getCatalog().addTable(table, "t");
+                long start = System.nanoTime();
+                long sum = scan(table);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s\t%d\t%.0f\t%d%n", mapped ? "mmap" : "channel", run,
+                        (double) numPages * BufferPool.getPageSize() / (1024 * 1024) / seconds, sum);
+                table.close();
+            }
+        }
+    }
+
+    private static long scan(HeapFile table) {
+        long sum = 0;
+        for(int pgNo = 0; pgNo < table.numPages(); pgNo++) {
+            HeapPage page = (HeapPage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            Iterator<Tuple> it = page.iterator();
+            while(it.hasNext()) {
+                sum += ((IntField) it.next().getField(0)).getValue();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 直接按HeapPage的格式生成每个slot都已使用的page，逐页写入文件
+     */
+    private static void writeTable(File f, int numPages) throws IOException {
+        TupleDesc td = Utility.getTupleDesc(NUM_FIELDS);
+        int pageSize = BufferPool.getPageSize();
+        int numSlots = (pageSize * 8) / (td.getSize() * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for(int pgNo = 0; pgNo < numPages; pgNo++) {
+                page.clear();
+                for(int i = 0; i < headerSize; i++) {
+                    int bits = Math.min(8, numSlots - i * 8);
+                    page.put((byte) ((1 << bits) - 1));
+                }
+                for(int slot = 0; slot < numSlots; slot++) {
+                    for(int j = 0; j < NUM_FIELDS; j++) {
+                        page.putInt(slot + j);
+                    }
+                }
+                page.position(0);
+                page.limit(pageSize);
+                while(page.hasRemaining()) {
+                    ch.write(page);
+                }
+            }
+        }
+    }
+}
@@ -14,7 +14,7 @@ import simpledb.transaction.TransactionId;
 import java.io.File;
 
 public class MyJoinTest {
-    public static void main(String[] args) throws TransactionAbortedException, DbException {
+    public static void main(String[] args) throws Exception {
         Type[] types = {Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE};
         String[] names = {"filed0", "field1", "field2"};
         TupleDesc td = new TupleDesc(types, names);
@@ -0,0 +1,91 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.*;
+
+public class Page2QCacheTest extends SimpleDbTestBase {
+
+    private static final int CAPACITY = 20;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(-1, Utility.getTupleDesc(2)),
+                SystemTestUtil.getUUID());
+    }
+
+    private static HeapPageId pid(int pgNo) {
+        return new HeapPageId(-1, pgNo);
+    }
+
+    private static void read(Page2QCache cache, int pgNo) throws Exception {
+        cache.putIfAbsent(pid(pgNo), new HeapPage(pid(pgNo), HeapPage.createEmptyPageData()));
+    }
+
+    /**
+     * Pages are only reclaimed from A1in when a frame is needed, so pages
+     * that fit in the cache all stay cached after being read once.
+     */
+    @Test public void workingSetFits() throws Exception {
+        Page2QCache cache = new Page2QCache(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            read(cache, i);
+        }
+        assertEquals(CAPACITY, cache.size());
+        assertEquals(0, cache.getEvictions());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertNotNull(cache.get(pid(i)));
+        }
+
+        // the next page needs a frame and reclaims the oldest one
+        read(cache, CAPACITY);
+        assertEquals(CAPACITY, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.isCached(pid(0)));
+    }
+
+    /**
+     * Pages read again after they were reclaimed from A1in move to Am, and
+     * a scan of pages read only once does not evict them.
+     */
+    @Test public void scanDoesNotFlushHotPages() throws Exception {
+        Page2QCache cache = new Page2QCache(CAPACITY);
+        for (int i = 0; i < 4; i++) {
+            read(cache, i);
+        }
+        // fill the cache so the first pages are reclaimed and remembered in A1out
+        for (int i = 100; i < 100 + CAPACITY; i++) {
+            read(cache, i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertFalse(cache.isCached(pid(i)));
+            read(cache, i);
+        }
+
+        for (int i = 200; i < 200 + CAPACITY * 5; i++) {
+            read(cache, i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(cache.get(pid(i)));
+        }
+        assertEquals(CAPACITY, cache.size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(Page2QCacheTest.class);
+    }
+}
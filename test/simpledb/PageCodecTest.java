@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.*;
+
+public class PageCodecTest extends SimpleDbTestBase {
+
+    private static final PageCodec[] CODECS = {PageCodec.LZ, PageCodec.DEFLATE, new DeflatePageCodec(9)};
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * @return the data of a HeapPage of two int columns holding count tuples
+     *         whose values are random ints below bound
+     */
+    private static byte[] heapPageData(int count, int bound, long seed) throws Exception {
+        HeapPage page = new HeapPage(new HeapPageId(-1, -1), HeapPage.createEmptyPageData());
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            page.insertTuple(Utility.getHeapTuple(new int[]{i, random.nextInt(bound)}));
+        }
+        return page.getPageData();
+    }
+
+    private static byte[] randomData(long seed) {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[][] samplePages() throws Exception {
+        int pageSize = BufferPool.getPageSize();
+        byte[] random = randomData(1);
+        byte[] pattern = new byte[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            pattern[i] = (byte) (i % 7);
+        }
+        byte[] halfZeros = Arrays.copyOf(random, pageSize);
+        Arrays.fill(halfZeros, pageSize / 4, pageSize * 3 / 4, (byte) 0);
+        return new byte[][]{
+                HeapPage.createEmptyPageData(),
+                heapPageData(504, 10, 2),
+                heapPageData(300, Integer.MAX_VALUE, 3),
+                random,
+                pattern,
+                halfZeros,
+        };
+    }
+
+    /**
+     * Unit test for PageCodec.compress() and PageCodec.decompress()
+     */
+    @Test public void roundTrip() throws Exception {
+        byte[][] pages = samplePages();
+        for (PageCodec codec : CODECS) {
+            for (byte[] page : pages) {
+                byte[] compressed = codec.compress(page);
+                byte[] restored = new byte[page.length];
+                Arrays.fill(restored, (byte) 1);
+                codec.decompress(compressed, compressed.length, restored);
+                assertArrayEquals(codec.toString(), page, restored);
+
+                // only the first srcLen bytes of src are compressed data
+                byte[] padded = Arrays.copyOf(compressed, compressed.length + 100);
+                Arrays.fill(padded, compressed.length, padded.length, (byte) 0x5a);
+                restored = new byte[page.length];
+                codec.decompress(padded, compressed.length, restored);
+                assertArrayEquals(codec.toString(), page, restored);
+            }
+
+            // repeated bytes compress well, random bytes do not
+            assertTrue(codec.toString(), codec.compress(pages[0]).length < 100);
+            assertTrue(codec.toString(), codec.compress(pages[4]).length < 100);
+            assertTrue(codec.toString(), codec.compress(pages[3]).length >= pages[3].length);
+        }
+    }
+
+    /**
+     * Truncated compressed data is rejected with an IOException.
+     */
+    @Test public void truncatedInput() throws Exception {
+        byte[] page = heapPageData(504, 10, 4);
+        for (PageCodec codec : CODECS) {
+            byte[] compressed = codec.compress(page);
+            try {
+                codec.decompress(compressed, compressed.length / 2, new byte[page.length]);
+                fail(codec + " should reject truncated data");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Pages written to a compressed HeapFile, including rewrites that move
+     * a page to a larger extent and pages that do not compress, read back
+     * the same after the file is reopened with its .ptt table. Space freed
+     * by the rewrites is reused after the reopen.
+     */
+    @Test public void reopenCompressedFile() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        File ptt = new File(f.getPath() + ".ptt");
+        f.deleteOnExit();
+        ptt.deleteOnExit();
+        TupleDesc td = Utility.getTupleDesc(2);
+
+        for (PageCodec codec : CODECS) {
+            HeapFile hf = new HeapFile(f, td, codec);
+            Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+            byte[][] expected = new byte[5][];
+            for (int pgNo = 0; pgNo < expected.length; pgNo++) {
+                expected[pgNo] = heapPageData(50 * (pgNo + 1), 10, pgNo);
+            }
+            // does not compress, so it is stored as is
+            expected[3] = new HeapPage(new HeapPageId(-1, -1), randomData(5)).getPageData();
+            for (int pgNo = 0; pgNo < expected.length; pgNo++) {
+                hf.writePage(new HeapPage(new HeapPageId(hf.getId(), pgNo), expected[pgNo]));
+            }
+            // grows beyond its extent and moves to the end of the file
+            expected[0] = heapPageData(504, 1000, 6);
+            hf.writePage(new HeapPage(new HeapPageId(hf.getId(), 0), expected[0]));
+            hf.close();
+
+            assertEquals(expected.length * 16, ptt.length());
+            HeapFile reopened = new HeapFile(f, td, codec);
+            Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+            assertEquals(expected.length, reopened.numPages());
+            assertTrue(reopened.getStoredBytes() < (long) expected.length * BufferPool.getPageSize());
+            for (int pgNo = 0; pgNo < expected.length; pgNo++) {
+                Page p = reopened.readPage(new HeapPageId(reopened.getId(), pgNo));
+                assertArrayEquals(codec + " page " + pgNo, expected[pgNo], p.getPageData());
+            }
+
+            // the first extent of page 0 is free again, a small new page goes there
+            long length = f.length();
+            byte[] small = heapPageData(10, 10, 7);
+            reopened.writePage(new HeapPage(new HeapPageId(reopened.getId(), expected.length), small));
+            assertEquals(length, f.length());
+            assertArrayEquals(small,
+                    reopened.readPage(new HeapPageId(reopened.getId(), expected.length)).getPageData());
+            assertArrayEquals(expected[1],
+                    reopened.readPage(new HeapPageId(reopened.getId(), 1)).getPageData());
+            reopened.close();
+
+            assertTrue(f.delete());
+            assertTrue(ptt.delete());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCodecTest.class);
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageCodec;
+import simpledb.storage.Tuple;
+import simpledb.storage.TuplePage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 比较不压缩和各个PageCodec压缩后的文件大小，以及全表扫描(读page+解压+解析)的耗时
+ * 生成的文件刚写完，大部分仍在OS page cache中，测不到冷数据时少读磁盘的收益，只能看到解压的CPU开销
+ *
+ * 用法: java simpledb.PageCompressionBenchmark [tablePages] [runs]
+ */
+public class PageCompressionBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        HeapFile plain = BufferPoolBenchmark.createTable(tablePages);
+        PageCodec[] codecs = {null, PageCodec.LZ, PageCodec.DEFLATE};
+        HeapFile[] tables = new HeapFile[codecs.length];
+        for(int i = 0; i < codecs.length; i++) {
+            tables[i] = codecs[i] == null ? plain : copy(plain, codecs[i]);
+        }
+
+        System.out.println("codec\trun\tMB\tms\tsum");
+        for(int run = 0; run < runs; run++) {
+            for(int i = 0; i < tables.length; i++) {
+                long start = System.nanoTime();
+                long sum = scan(tables[i]);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("%s\t%d\t%.1f\t%d\t%d%n", codecs[i] == null ? "none" : codecs[i], run,
+                        tables[i].getStoredBytes() / (1024.0 * 1024), millis, sum);
+            }
+        }
+    }
+
+    /**
+     * 把src的所有page以同样的内容写入一个新的压缩文件，写完后重新打开以得到page数
+     */
+    private static HeapFile copy(HeapFile src, PageCodec codec) throws IOException {
+        File f = File.createTempFile("compression-bench", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".ptt").deleteOnExit();
+        HeapFile dst = new HeapFile(f, src.getTupleDesc(), codec);
+        Database.getCatalog().addTable(dst, f.getName());
+        for(int pgNo = 0; pgNo < src.numPages(); pgNo++) {
+            byte[] data = src.readPage(new HeapPageId(src.getId(), pgNo)).getPageData();
+            dst.writePage(new HeapPage(new HeapPageId(dst.getId(), pgNo), data));
+        }
+        dst.close();
+        HeapFile reopened = new HeapFile(f, src.getTupleDesc(), codec);
+        Database.getCatalog().addTable(reopened, f.getName());
+        return reopened;
+    }
+
+    private static long scan(HeapFile table) throws IOException {
+        long sum = 0;
+        for(int pgNo = 0; pgNo < table.numPages(); pgNo++) {
+            TuplePage page = (TuplePage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            Iterator<Tuple> it = page.iterator();
+            while(it.hasNext()) {
+                sum += it.next().getInt(0);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PaxPageTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 3;
+
+    private HeapPageId pid;
+    private int numSlots;
+    private int headerSize;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        TupleDesc td = Utility.getTupleDesc(COLUMNS);
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+        numSlots = (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        headerSize = (numSlots + 7) / 8;
+    }
+
+    private static Tuple tuple(int slot) {
+        return Utility.getHeapTuple(new int[]{slot, slot * 10, slot * 100});
+    }
+
+    private int valueAt(byte[] data, int column, int slot) {
+        return ByteBuffer.wrap(data).getInt(headerSize + numSlots * 4 * column + slot * 4);
+    }
+
+    private static Map<Integer, Tuple> bySlot(HeapPage page) {
+        Map<Integer, Tuple> tuples = new HashMap<>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull(tuples.put(t.getRecordId().getTupleNumber(), t));
+        }
+        return tuples;
+    }
+
+    /**
+     * A PaxPage holds as many tuples as a HeapPage of the same schema.
+     */
+    @Test public void emptyPage() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(numSlots, page.getNumEmptySlots());
+        assertEquals(new HeapPage(pid, HeapPage.createEmptyPageData()).getNumEmptySlots(),
+                page.getNumEmptySlots());
+        assertFalse(page.iterator().hasNext());
+    }
+
+    /**
+     * Unit test for PaxPage.getPageData(): every column is written to its
+     * own minipage, and the page reads back the same tuples.
+     */
+    @Test public void insertTuple() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < numSlots; i++) {
+            Tuple t = tuple(i);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+
+        byte[] data = page.getPageData();
+        for (int slot = 0; slot < numSlots; slot++) {
+            assertEquals(slot, valueAt(data, 0, slot));
+            assertEquals(slot * 10, valueAt(data, 1, slot));
+            assertEquals(slot * 100, valueAt(data, 2, slot));
+        }
+
+        Map<Integer, Tuple> tuples = bySlot(new PaxPage(pid, data));
+        assertEquals(numSlots, tuples.size());
+        for (int slot = 0; slot < numSlots; slot++) {
+            assertTrue(TestUtil.compareTuples(tuple(slot), tuples.get(slot)));
+        }
+
+        try {
+            page.insertTuple(tuple(0));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Deleted slots are cleared in every minipage, the other tuples keep
+     * their RecordIds, and a new tuple reuses a free slot.
+     */
+    @Test public void deleteAndReinsert() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 100; i++) {
+            page.insertTuple(tuple(i));
+        }
+
+        // reload so that the remaining tuples are views of the page bytes
+        page = new PaxPage(pid, page.getPageData());
+        for (Tuple t : bySlot(page).values()) {
+            if (t.getRecordId().getTupleNumber() % 2 == 0) {
+                page.deleteTuple(t);
+            }
+        }
+        Tuple added = tuple(1000);
+        page.insertTuple(added);
+        assertEquals(new RecordId(pid, 0), added.getRecordId());
+
+        byte[] data = page.getPageData();
+        for (int slot = 2; slot < 100; slot += 2) {
+            for (int column = 0; column < COLUMNS; column++) {
+                assertEquals(0, valueAt(data, column, slot));
+            }
+        }
+        assertEquals(1000, valueAt(data, 0, 0));
+        assertEquals(100000, valueAt(data, 2, 0));
+
+        Map<Integer, Tuple> tuples = bySlot(new PaxPage(pid, data));
+        assertEquals(51, tuples.size());
+        assertTrue(TestUtil.compareTuples(added, tuples.get(0)));
+        for (int slot = 1; slot < 100; slot += 2) {
+            assertTrue(TestUtil.compareTuples(tuple(slot), tuples.get(slot)));
+        }
+    }
+
+    /**
+     * Unit test for PaxPage.getBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1));
+        page.setBeforeImage();
+        page.insertTuple(tuple(2));
+
+        HeapPage before = page.getBeforeImage();
+        assertTrue(before instanceof PaxPage);
+        Map<Integer, Tuple> tuples = bySlot(before);
+        assertEquals(1, tuples.size());
+        assertTrue(TestUtil.compareTuples(tuple(1), tuples.get(0)));
+    }
+
+    /**
+     * Tuples inserted and deleted through the BufferPool are read back with
+     * the same RecordIds after the file is reopened.
+     */
+    @Test public void reopenPaxHeapFile() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        TupleDesc td = Utility.getTupleDesc(COLUMNS);
+        PaxHeapFile hf = new PaxHeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        List<Tuple> kept = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = tuple(i);
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            if (i % 3 == 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            } else {
+                kept.add(t);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        // deleted slots are reused, so the 667 remaining tuples fit in two pages
+        assertEquals(2, hf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        PaxHeapFile reopened = new PaxHeapFile(f, td);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+        Map<RecordId, Tuple> tuples = new HashMap<>();
+        DbFileIterator it = reopened.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            tuples.put(t.getRecordId(), t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(kept.size(), tuples.size());
+        for (Tuple t : kept) {
+            assertTrue(TestUtil.compareTuples(t, tuples.get(t.getRecordId())));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
@@ -0,0 +1,100 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PaxHeapFile;
+import simpledb.storage.PaxPage;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TuplePage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 比较宽表只聚合两列时行存(HeapPage)和PAX(PaxPage)两种page格式的扫描吞吐量
+ * page全部读入内存后再扫描，测的是在page内取出两列的开销，不包括I/O
+ *
+ * 用法: java simpledb.PaxScanBenchmark [rows] [columns] [runs]
+ */
+public class PaxScanBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        TupleDesc td = Utility.getTupleDesc(columns);
+        HeapFile row = new HeapFile(tempFile(), td);
+        HeapFile pax = new PaxHeapFile(tempFile(), td);
+        Database.getCatalog().addTable(row, "row");
+        Database.getCatalog().addTable(pax, "pax");
+        TuplePage[] rowPages = writeTable(row, td, rows);
+        TuplePage[] paxPages = writeTable(pax, td, rows);
+
+        int a = columns / 4, b = columns - 2;
+        System.out.println("format\trun\tMtuples/s\tsum");
+        for(int run = 0; run < runs; run++) {
+            for(TuplePage[] pages : new TuplePage[][]{rowPages, paxPages}) {
+                long start = System.nanoTime();
+                long sum = 0;
+                for(TuplePage page : pages) {
+                    Iterator<Tuple> it = page.iterator();
+                    while(it.hasNext()) {
+                        Tuple t = it.next();
+                        sum += t.getInt(a) + t.getInt(b);
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s\t%d\t%.1f\t%d%n", pages == rowPages ? "row" : "pax", run, rows / seconds / 1e6, sum);
+            }
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("pax-bench", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /**
+     * 逐页填满后写入文件，再按文件的格式读回所有page
+     */
+    private static TuplePage[] writeTable(HeapFile table, TupleDesc td, int rows) throws IOException {
+        int pgNo = 0;
+        TuplePage page = newPage(table, pgNo);
+        for(int i = 0; i < rows; i++) {
+            int[] values = new int[td.numFields()];
+            for(int j = 0; j < values.length; j++) {
+                values[j] = i + j;
+            }
+            Tuple t = Utility.getHeapTuple(values);
+            if(!page.hasRoomFor(t)) {
+                table.writePage(page);
+                page = newPage(table, ++pgNo);
+            }
+            try {
+                page.insertTuple(t);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        table.writePage(page);
+
+        TuplePage[] pages = new TuplePage[pgNo + 1];
+        for(int i = 0; i <= pgNo; i++) {
+            pages[i] = (TuplePage) table.readPage(new HeapPageId(table.getId(), i));
+        }
+        return pages;
+    }
+
+    private static TuplePage newPage(HeapFile table, int pgNo) throws IOException {
+        HeapPageId pid = new HeapPageId(table.getId(), pgNo);
+        byte[] empty = HeapPage.createEmptyPageData();
+        return table instanceof PaxHeapFile ? new PaxPage(pid, empty) : new HeapPage(pid, empty);
+    }
+}
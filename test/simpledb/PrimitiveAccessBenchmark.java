@@ -0,0 +1,60 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.Predicate;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionId;
+
+import java.util.Iterator;
+
+/**
+ * 比较读取int字段的两种方式在过滤+求和时的吞吐量：getField得到IntField再取值 vs getInt直接读取page字节
+ * table全部缓存在BufferPool中，每轮都是新解析的tuple视图，测的是字段访问和比较本身的开销
+ *
+ * 用法: java simpledb.PrimitiveAccessBenchmark [tablePages] [rounds]
+ */
+public class PrimitiveAccessBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        HeapFile table = BufferPoolBenchmark.createTable(tablePages);
+        Database.resetBufferPool(tablePages);
+        TransactionId tid = new TransactionId();
+        Predicate predicate = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(50));
+
+        System.out.println("mode\tround\tMtuples/s\tsum");
+        for(int round = 0; round < rounds; round++) {
+            for(boolean primitive : new boolean[]{false, true}) {
+                long tuples = 0, sum = 0;
+                long start = System.nanoTime();
+                for(int pgNo = 0; pgNo < tablePages; pgNo++) {
+                    HeapPage page = (HeapPage) Database.getBufferPool()
+                            .getPage(tid, new HeapPageId(table.getId(), pgNo), Permissions.READ_ONLY);
+                    Iterator<Tuple> it = page.iterator();
+                    while(it.hasNext()) {
+                        Tuple t = it.next();
+                        tuples++;
+                        if(primitive) {
+                            if(predicate.filter(t)) {
+                                sum += t.getInt(0);
+                            }
+                        } else if(t.getField(1).compare(Predicate.Op.LESS_THAN, predicate.getOperand())) {
+                            sum += ((IntField) t.getField(0)).getValue();
+                        }
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s\t%d\t%.1f\t%d%n", primitive ? "getInt" : "getField", round, tuples / seconds / 1e6, sum);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.BufferPoolStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionId;
+
+/**
+ * 比较不同预读窗口下冷表(不在BufferPool中)全表扫描的耗时
+ * 每个tuple做一些计算来模拟查询处理，预读的I/O可以与之重叠
+ * 预读线程需要空闲的CPU，单核机器上看不到收益
+ *
+ * 用法: java simpledb.ReadAheadBenchmark [tablePages] [bufferPages] [workPerTuple]
+ */
+public class ReadAheadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int bufferPages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int workPerTuple = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        HeapFile table = BufferPoolBenchmark.createTable(tablePages);
+        System.out.println("window\tms\tmisses\tprefetches\tchecksum");
+        for(int run = 0; run < 2; run++) {
+            for(int window : new int[]{0, 4, 8, 32}) {
+                table.setReadAheadPages(window);
+                BufferPool bufferPool = Database.resetBufferPool(bufferPages);
+                TransactionId tid = new TransactionId();
+                long start = System.nanoTime();
+                long checksum = scan(tid, table, workPerTuple);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                bufferPool.transactionComplete(tid);
+                BufferPoolStats stats = bufferPool.getStats();
+                System.out.printf("%d\t%d\t%d\t%d\t%d%n", window, millis, stats.getMisses(), stats.getPrefetches(), checksum);
+            }
+        }
+    }
+
+    private static long scan(TransactionId tid, HeapFile table, int workPerTuple) throws Exception {
+        SeqScan scan = new SeqScan(tid, table.getId());
+        scan.open();
+        long checksum = 0;
+        while(scan.hasNext()) {
+            Tuple t = scan.next();
+            long v = ((IntField) t.getField(0)).getValue();
+            for(int i = 0; i < workPerTuple; i++) {
+                v = v * 6364136223846793005L + 1442695040888963407L;
+            }
+            checksum += v;
+        }
+        scan.close();
+        return checksum;
+    }
+}
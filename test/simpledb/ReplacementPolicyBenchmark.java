@@ -0,0 +1,68 @@
+package simpledb;
+
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.storage.Page2QCache;
+import simpledb.storage.PageCache;
+import simpledb.storage.PageClockCache;
+import simpledb.storage.PageId;
+import simpledb.storage.PageReplacementPolicy;
+
+import java.util.Random;
+
+/**
+ * 比较各个置换算法在点查询和全表扫描混合负载下的命中率
+ * 点查询集中访问少量热点page，每隔一段时间插入一次全表扫描，table远大于缓存
+ * 直接按BufferPool.getPage的方式驱动页表：命中直接返回，未命中从磁盘读入并缓存
+ *
+ * 用法: java simpledb.ReplacementPolicyBenchmark [tablePages] [bufferPages] [hotPages] [lookupsPerScan] [rounds]
+ */
+public class ReplacementPolicyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int bufferPages = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int hotPages = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int lookupsPerScan = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        HeapFile table = BufferPoolBenchmark.createTable(tablePages);
+        System.out.println("policy\tlookup hit%\toverall hit%");
+        for(PageReplacementPolicy policy : PageReplacementPolicy.values()) {
+            PageCache cache = policy == PageReplacementPolicy.TWO_Q
+                    ? new Page2QCache(bufferPages) : new PageClockCache(bufferPages);
+            Random random = new Random(0);
+            long lookups = 0, lookupHits = 0, accesses = 0, hits = 0;
+            for(int round = 0; round < rounds; round++) {
+                for(int i = 0; i < lookupsPerScan; i++) {
+                    // 90%的点查询落在热点page上
+                    int pgNo = random.nextInt(10) < 9 ? random.nextInt(hotPages) : random.nextInt(tablePages);
+                    boolean hit = access(cache, table, new HeapPageId(table.getId(), pgNo));
+                    lookups++;
+                    accesses++;
+                    if(hit) {
+                        lookupHits++;
+                        hits++;
+                    }
+                }
+                for(int pgNo = 0; pgNo < tablePages; pgNo++) {
+                    accesses++;
+                    if(access(cache, table, new HeapPageId(table.getId(), pgNo))) {
+                        hits++;
+                    }
+                }
+            }
+            System.out.printf("%s\t%.2f\t%.2f%n", policy, lookupHits * 100.0 / lookups, hits * 100.0 / accesses);
+        }
+    }
+
+    private static boolean access(PageCache cache, HeapFile table, PageId pid) throws Exception {
+        if(cache.get(pid) != null) {
+            return true;
+        }
+        Page page = table.readPage(pid);
+        cache.putIfAbsent(pid, page);
+        return false;
+    }
+}
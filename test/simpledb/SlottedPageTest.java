@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "name"});
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    static Tuple tuple(TupleDesc td, int id, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + (id + i) % 26));
+        }
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(sb.toString(), Type.STRING_LEN));
+        return t;
+    }
+
+    private static Map<Integer, Tuple> bySlot(SlottedPage page) {
+        Map<Integer, Tuple> tuples = new HashMap<>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull(tuples.put(t.getRecordId().getTupleNumber(), t));
+        }
+        return tuples;
+    }
+
+    /**
+     * A page of all zeros is an empty page.
+     */
+    @Test public void emptyPage() {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(0, page.getNumSlots());
+        assertFalse(page.iterator().hasNext());
+        assertEquals(BufferPool.getPageSize() - 4, page.getFreeSpace());
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple(): tuples of different lengths
+     * get consecutive slots and read back the same, also from the page data.
+     */
+    @Test public void insertTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            Tuple t = tuple(TD, i, i % 40);
+            if (!page.hasRoomFor(t)) {
+                break;
+            }
+            int free = page.getFreeSpace();
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertEquals(free - SlottedPage.getRecordSize(t) - 4, page.getFreeSpace());
+            inserted.add(t);
+        }
+        // a fixed-width HeapPage holds 30 of these tuples
+        assertTrue(inserted.size() > 100);
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        for (SlottedPage p : new SlottedPage[]{page, reread}) {
+            Map<Integer, Tuple> tuples = bySlot(p);
+            assertEquals(inserted.size(), tuples.size());
+            for (Tuple t : inserted) {
+                assertTrue(TestUtil.compareTuples(t, tuples.get(t.getRecordId().getTupleNumber())));
+            }
+        }
+
+        try {
+            page.insertTuple(tuple(TD, 0, 40));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple() with a tuple of another TupleDesc
+     */
+    @Test(expected=DbException.class)
+    public void insertMismatchedTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+    }
+
+    /**
+     * Unit test for SlottedPage.deleteTuple() with false tuples
+     */
+    @Test(expected=DbException.class)
+    public void deleteNonexistentTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        Tuple t = tuple(TD, 1, 5);
+        t.setRecordId(new RecordId(pid, 0));
+        page.deleteTuple(t);
+    }
+
+    /**
+     * Deleting tuples leaves holes that a later insert reclaims by
+     * compacting the page. The surviving tuples keep their slots, so their
+     * RecordIds stay valid, and the inserted tuple reuses a free slot.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; page.hasRoomFor(tuple(TD, i, 20)); i++) {
+            Tuple t = tuple(TD, i, 20);
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+
+        List<Tuple> kept = new ArrayList<>();
+        for (int i = 0; i < inserted.size(); i++) {
+            if (i % 2 == 0) {
+                page.deleteTuple(inserted.get(i));
+            } else {
+                kept.add(inserted.get(i));
+            }
+        }
+        assertFalse(page.isSlotUsed(0));
+
+        // the holes are 26 bytes each, so this record only fits after compaction
+        Tuple big = tuple(TD, -1, 100);
+        assertTrue(page.hasRoomFor(big));
+        page.insertTuple(big);
+        assertEquals(new RecordId(pid, 0), big.getRecordId());
+        kept.add(big);
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        for (SlottedPage p : new SlottedPage[]{page, reread}) {
+            Map<Integer, Tuple> tuples = bySlot(p);
+            assertEquals(kept.size(), tuples.size());
+            for (Tuple t : kept) {
+                assertTrue(TestUtil.compareTuples(t, tuples.get(t.getRecordId().getTupleNumber())));
+            }
+        }
+
+        // deleting every tuple leaves an empty slot directory
+        for (Tuple t : kept) {
+            page.deleteTuple(t);
+        }
+        assertEquals(0, page.getNumSlots());
+        assertEquals(BufferPool.getPageSize() - 4, page.getFreeSpace());
+    }
+
+    /**
+     * Tuples inserted and deleted through the BufferPool are read back with
+     * the same RecordIds after the file is reopened.
+     */
+    @Test public void reopenSlottedHeapFile() throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        SlottedHeapFile hf = new SlottedHeapFile(f, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = tuple(TD, i, 10 + i % 30);
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            inserted.add(t);
+        }
+        List<Tuple> kept = new ArrayList<>();
+        for (Tuple t : inserted) {
+            if (t.getInt(0) % 3 == 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            } else {
+                kept.add(t);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(hf.numPages() > 1);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SlottedHeapFile reopened = new SlottedHeapFile(f, TD);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+        Map<RecordId, Tuple> tuples = new HashMap<>();
+        DbFileIterator it = reopened.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            tuples.put(t.getRecordId(), t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(kept.size(), tuples.size());
+        for (Tuple t : kept) {
+            assertTrue(TestUtil.compareTuples(t, tuples.get(t.getRecordId())));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.SortMergeJoin;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 比较SortMergeJoin与其他join算法的耗时
+ * range：两个内存中的输入做left.a < right.a，对比Join(nested loop)
+ *   right.a的取值范围只有left.a的1/10，约5%的组合匹配，nested loop仍然要比较所有组合
+ * btree：两个B+树table按key做等值join，SeqScan按key的顺序输出，SortMergeJoin不需要排序，对比HashEquiJoin
+ * spill：range的输入，SortMergeJoin的内存预算只有1MB，排序溢出到临时文件
+ *
+ * 用法: java simpledb.SortMergeJoinBenchmark [rangeRows] [btreeRows] [runs]
+ */
+public class SortMergeJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rangeRows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int btreeRows = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        TupleIterator left = relation(rangeRows, rangeRows * 10, 1), right = relation(rangeRows, rangeRows, 2);
+        BTreeFile bt1 = BTreeUtility.createRandomBTreeFile(2, btreeRows, btreeRows, null, null, 0);
+        BTreeFile bt2 = BTreeUtility.createRandomBTreeFile(2, btreeRows, btreeRows, null, null, 0);
+        Database.getCatalog().addTable(bt1, "smj_bt1");
+        Database.getCatalog().addTable(bt2, "smj_bt2");
+
+        JoinPredicate lt = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        System.out.println("run\tcase\toperator\tms\trows");
+        for(int run = 0; run < runs; run++) {
+            time(run, "range", new Join(lt, left, right));
+            time(run, "range", new SortMergeJoin(lt, left, right));
+            time(run, "spill", new SortMergeJoin(lt, left, right, 1 << 20));
+
+            TransactionId tid = new TransactionId();
+            time(run, "btree", new HashEquiJoin(eq, new SeqScan(tid, bt1.getId()), new SeqScan(tid, bt2.getId())));
+            time(run, "btree", new SortMergeJoin(eq, new SeqScan(tid, bt1.getId()), new SeqScan(tid, bt2.getId())));
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    private static void time(int run, String name, OpIterator join) throws Exception {
+        long start = System.nanoTime();
+        join.open();
+        long rows = 0;
+        while(join.hasNext()) {
+            join.next();
+            rows++;
+        }
+        join.close();
+        System.out.printf("%d\t%s\t%s\t%.0f\t%d%n", run, name, join.getClass().getSimpleName(),
+                (System.nanoTime() - start) / 1e6, rows);
+    }
+
+    /**
+     * @return rows个(key, i)，key是[0, keys)中的随机数
+     */
+    private static TupleIterator relation(int rows, int keys, int seed) {
+        Random random = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for(int i = 0; i < rows; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{random.nextInt(keys), i}));
+        }
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+}
@@ -0,0 +1,207 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.SortMergeJoin;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  static final Predicate.Op[] OPS = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+      Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+
+  // each sort gets half of the budget: with 1 byte every tuple is a run of
+  // its own and the runs are merged two at a time in many passes, 20000
+  // bytes hold about a hundred tuples and the default holds every input
+  static final long[] BUDGETS = { 1, 20000, SortMergeJoin.DEFAULT_MEMORY_BUDGET };
+
+  static Set<String> runFiles() {
+    Set<String> files = new HashSet<>();
+    String[] names = new File(System.getProperty("java.io.tmpdir")).list();
+    if (names != null) {
+      for (String name : names) {
+        if (name.startsWith("sortmerge") && name.endsWith(".run")) {
+          files.add(name);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Joins op over its inputs and compares the result with Join, also after
+   * a rewind in the middle of the output and one at its end.
+   */
+  static void checkJoin(String message, SortMergeJoin op, List<String> expected) throws Exception {
+    op.open();
+    for (int i = 0; i < expected.size() / 2; i++) {
+      op.next();
+    }
+    op.rewind();
+    assertEquals(message, expected, HashEquiJoinTest.drain(op));
+    op.rewind();
+    assertEquals(message, expected, HashEquiJoinTest.drain(op));
+    assertTrue(message, TestUtil.checkExhausted(op));
+    op.close();
+  }
+
+  void checkOperators(IntUnaryOperator leftKey, IntUnaryOperator rightKey, boolean strings) throws Exception {
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      List<String> expected = HashEquiJoinTest.expected(pred,
+          HashEquiJoinTest.createInput(300, 2, leftKey, strings),
+          HashEquiJoinTest.createInput(200, 3, rightKey, strings));
+      assertFalse(expected.isEmpty());
+      for (long budget : BUDGETS) {
+        SortMergeJoin op = new SortMergeJoin(pred,
+            HashEquiJoinTest.createInput(300, 2, leftKey, strings),
+            HashEquiJoinTest.createInput(200, 3, rightKey, strings), budget);
+        checkJoin(o + " budget " + budget, op, expected);
+      }
+    }
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() with int keys that have
+   * duplicates on both sides
+   */
+  @Test public void intKeys() throws Exception {
+    checkOperators(HashEquiJoinTest.skewed(50), HashEquiJoinTest.skewed(40), false);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() with string keys, which compare
+   * in another order than the ints they are made of
+   */
+  @Test public void stringKeys() throws Exception {
+    checkOperators(HashEquiJoinTest.skewed(50), HashEquiJoinTest.skewed(40), true);
+  }
+
+  /**
+   * The join is empty when either input is empty.
+   */
+  @Test public void emptyInputs() throws Exception {
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      for (long budget : BUDGETS) {
+        OpIterator[][] inputs = {
+            { HashEquiJoinTest.createInput(0, 2, i -> i, false), HashEquiJoinTest.createInput(50, 3, i -> i, false) },
+            { HashEquiJoinTest.createInput(100, 2, i -> i, false), HashEquiJoinTest.createInput(0, 3, i -> i, false) },
+            { HashEquiJoinTest.createInput(0, 2, i -> i, false), HashEquiJoinTest.createInput(0, 3, i -> i, false) },
+        };
+        for (OpIterator[] input : inputs) {
+          SortMergeJoin op = new SortMergeJoin(pred, input[0], input[1], budget);
+          op.open();
+          assertTrue(TestUtil.checkExhausted(op));
+          op.rewind();
+          assertTrue(TestUtil.checkExhausted(op));
+          op.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * An ascending OrderBy on the join field is read without sorting it again.
+   */
+  @Test public void orderByInput() throws Exception {
+    OpIterator left = new OrderBy(0, true, HashEquiJoinTest.createInput(300, 2, HashEquiJoinTest.skewed(50), false));
+    assertTrue(SortMergeJoin.isSortedOn(left, 0));
+    assertFalse(SortMergeJoin.isSortedOn(left, 1));
+    assertFalse(SortMergeJoin.isSortedOn(
+        new OrderBy(0, false, HashEquiJoinTest.createInput(300, 2, HashEquiJoinTest.skewed(50), false)), 0));
+
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      List<String> expected = HashEquiJoinTest.expected(pred,
+          HashEquiJoinTest.createInput(300, 2, HashEquiJoinTest.skewed(50), false),
+          HashEquiJoinTest.createInput(200, 3, HashEquiJoinTest.skewed(40), false));
+      for (long budget : BUDGETS) {
+        // GREATER_THAN and GREATER_THAN_OR_EQ read child2 as the outer side
+        SortMergeJoin op = new SortMergeJoin(pred,
+            new OrderBy(0, true, HashEquiJoinTest.createInput(300, 2, HashEquiJoinTest.skewed(50), false)),
+            new OrderBy(0, true, HashEquiJoinTest.createInput(200, 3, HashEquiJoinTest.skewed(40), false)),
+            budget);
+        checkJoin(o + " budget " + budget, op, expected);
+      }
+    }
+  }
+
+  /**
+   * A scan of a B+ tree file on its key field is read in key order.
+   */
+  @Test public void btreeInput() throws Exception {
+    BTreeFile raw = BTreeUtility.createRandomBTreeFile(2, 300, 100, null, null, 0);
+    BTreeFile bt = new BTreeFile(raw.getFile(), 0, Utility.getTupleDesc(2, "bt"));
+    Database.getCatalog().addTable(bt, SystemTestUtil.getUUID());
+    TransactionId tid = new TransactionId();
+    assertTrue(SortMergeJoin.isSortedOn(new SeqScan(tid, bt.getId()), 0));
+    assertFalse(SortMergeJoin.isSortedOn(new SeqScan(tid, bt.getId()), 1));
+
+    for (Predicate.Op o : OPS) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      List<String> expected = HashEquiJoinTest.expected(pred, new SeqScan(tid, bt.getId()),
+          HashEquiJoinTest.createInput(200, 3, i -> i % 100, false));
+      for (long budget : BUDGETS) {
+        SortMergeJoin op = new SortMergeJoin(pred, new SeqScan(tid, bt.getId()),
+            HashEquiJoinTest.createInput(200, 3, i -> i % 100, false), budget);
+        checkJoin(o + " budget " + budget, op, expected);
+      }
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Inputs larger than the budget are sorted in temporary files, which are
+   * deleted on close.
+   */
+  @Test public void spillToDisk() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    for (long budget : BUDGETS) {
+      Set<String> before = runFiles();
+      SortMergeJoin op = new SortMergeJoin(pred,
+          HashEquiJoinTest.createInput(300, 2, HashEquiJoinTest.skewed(50), false),
+          HashEquiJoinTest.createInput(200, 3, HashEquiJoinTest.skewed(40), false), budget);
+      op.open();
+      Set<String> spilled = runFiles();
+      spilled.removeAll(before);
+      // only the default budget holds both inputs, the merged runs of each
+      // side are left in one file
+      assertEquals("budget " + budget, budget == SortMergeJoin.DEFAULT_MEMORY_BUDGET ? 0 : 2, spilled.size());
+      op.close();
+      Set<String> left = runFiles();
+      left.retainAll(spilled);
+      assertTrue("run files are deleted on close", left.isEmpty());
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
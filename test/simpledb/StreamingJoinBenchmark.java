@@ -0,0 +1,55 @@
+package simpledb;
+
+import simpledb.common.Utility;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 非等值Join(left.a < right.a)的第一行延迟和读取前limit行的耗时，类似带LIMIT的查询
+ * 两个输入都在内存中，完整的结果有约rows * rows / 2行
+ *
+ * 用法: java simpledb.StreamingJoinBenchmark [rows] [limit] [runs]
+ */
+public class StreamingJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        TupleIterator left = relation(rows, 1), right = relation(rows, 2);
+        System.out.println("run\tfirstRowMs\tlimitMs\trows");
+        for(int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            Join join = new Join(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0), left, right);
+            join.open();
+            long firstRow = 0;
+            int n = 0;
+            while(n < limit && join.hasNext()) {
+                join.next();
+                if(n++ == 0) {
+                    firstRow = System.nanoTime() - start;
+                }
+            }
+            long total = System.nanoTime() - start;
+            join.close();
+            System.out.printf("%d\t%.1f\t%.0f\t%d%n", run, firstRow / 1e6, total / 1e6, n);
+        }
+    }
+
+    private static TupleIterator relation(int rows, int seed) {
+        Random random = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>(rows);
+        for(int i = 0; i < rows; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{random.nextInt(rows), i}));
+        }
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+}
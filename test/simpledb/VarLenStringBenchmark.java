@@ -0,0 +1,107 @@
+package simpledb;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.SlottedHeapFile;
+import simpledb.storage.SlottedPage;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TuplePage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 比较同一张短字符串表(int id, string code)分别用定长的HeapPage和变长的SlottedPage存储时的文件大小和全表扫描耗时
+ * 扫描直接调用readPage，不经过BufferPool，生成的文件刚写完，大部分仍在OS page cache中
+ *
+ * 用法: java simpledb.VarLenStringBenchmark [rows] [codeLength] [runs]
+ */
+public class VarLenStringBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int codeLength = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "code"});
+        HeapFile fixed = new HeapFile(tempFile(), td);
+        HeapFile slotted = new SlottedHeapFile(tempFile(), td);
+        Database.getCatalog().addTable(fixed, "fixed");
+        Database.getCatalog().addTable(slotted, "slotted");
+        writeTable(fixed, td, rows, codeLength);
+        writeTable(slotted, td, rows, codeLength);
+
+        System.out.println("format\trun\tMB\tms\tsum");
+        for(int run = 0; run < runs; run++) {
+            for(HeapFile table : new HeapFile[]{fixed, slotted}) {
+                // 重新打开文件，numPages按写入后的文件长度计算
+                HeapFile reopened = table instanceof SlottedHeapFile
+                        ? new SlottedHeapFile(table.getFile(), td) : new HeapFile(table.getFile(), td);
+                Database.getCatalog().addTable(reopened, table == fixed ? "fixed" : "slotted");
+                long start = System.nanoTime();
+                long sum = scan(reopened);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("%s\t%d\t%.1f\t%d\t%d%n", table == fixed ? "fixed" : "slotted", run,
+                        reopened.getFile().length() / (1024.0 * 1024), millis, sum);
+                reopened.close();
+            }
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("varlen-bench", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /**
+     * 不经过BufferPool，逐页填满后直接写入文件
+     */
+    private static void writeTable(HeapFile table, TupleDesc td, int rows, int codeLength) throws IOException {
+        int pgNo = 0;
+        TuplePage page = newPage(table, pgNo);
+        for(int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            String code = "C" + i;
+            t.setField(1, new StringField(code.length() > codeLength ? code.substring(0, codeLength) : code, Type.STRING_LEN));
+            if(!page.hasRoomFor(t)) {
+                table.writePage(page);
+                page = newPage(table, ++pgNo);
+            }
+            try {
+                page.insertTuple(t);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        table.writePage(page);
+    }
+
+    private static TuplePage newPage(HeapFile table, int pgNo) throws IOException {
+        HeapPageId pid = new HeapPageId(table.getId(), pgNo);
+        byte[] empty = HeapPage.createEmptyPageData();
+        return table instanceof SlottedHeapFile ? new SlottedPage(pid, empty) : new HeapPage(pid, empty);
+    }
+
+    private static long scan(HeapFile table) {
+        long sum = 0;
+        for(int pgNo = 0; pgNo < table.numPages(); pgNo++) {
+            TuplePage page = (TuplePage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            Iterator<Tuple> it = page.iterator();
+            while(it.hasNext()) {
+                Tuple t = it.next();
+                sum += t.getInt(0) + ((StringField) t.getField(1)).getValue().length();
+            }
+        }
+        return sum;
+    }
+}
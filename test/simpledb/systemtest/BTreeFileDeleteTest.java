@@ -30,7 +30,7 @@ public class BTreeFileDeleteTest extends SimpleDbTestBase {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		Database.getBufferPool().transactionComplete(tid);
 
 		// set the page size back to the default
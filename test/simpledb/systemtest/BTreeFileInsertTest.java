@@ -33,7 +33,7 @@ public class BTreeFileInsertTest extends SimpleDbTestBase {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		Database.getBufferPool().transactionComplete(tid);
 		
 		// set the page size back to the default
@@ -135,7 +135,7 @@ public class LogTest extends SimpleDbTestBase {
     }
 
     @Test public void PatchTest()
-            throws IOException, DbException, TransactionAbortedException {
+            throws IOException, DbException, TransactionAbortedException, InterruptedException {
         setup();
 
         // *** Test:
@@ -35,7 +35,7 @@ public class QueryTest {
         return Utility.openHeapFile(columns, colPrefix, temp);
 	}
 	
-	@Test(timeout=20000) public void queryTest() throws IOException {
+	@Test(timeout=20000) public void queryTest() throws IOException, TransactionAbortedException, DbException {
 		// This test is intended to approximate the join described in the
 		// "Query Planning" section of 2009 Quiz 1,
 		// though with some minor variation due to limitations in simpledb